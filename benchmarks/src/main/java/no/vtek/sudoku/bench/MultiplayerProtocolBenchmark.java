@@ -0,0 +1,123 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Vegard Løkken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package no.vtek.sudoku.bench;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import no.vtek.sudoku.Grid;
+import no.vtek.sudoku.MultiplayerProtocol;
+import no.vtek.sudoku.SudokuFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for the multiplayer frames: writing and reading a board or a
+ * cell change, and a stream of cell changes through one buffer.
+ * 
+ * @author Vegard Løkken
+ * @version 0.25
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MultiplayerProtocolBenchmark {
+	private static final int STREAM = 1024;
+	
+	private final ByteBuffer buffer =
+			ByteBuffer.allocateDirect(STREAM * MultiplayerProtocol.MAX_SIZE);
+	private final MultiplayerProtocol.Frame frame =
+			new MultiplayerProtocol.Frame();
+	private final int[] cells = new int[Grid.CELLS];
+	private final boolean[] given = new boolean[Grid.CELLS];
+	private int sequence = 0;
+	
+	@Setup
+	public void setup() {
+		int[][] game = SudokuFactory.createGame(SudokuFactory.MEDIUM);
+		
+		for (int cell=0; cell<Grid.CELLS; cell++) {
+			cells[cell] = game[Grid.rowOf(cell)][Grid.colOf(cell)];
+			given[cell] = cells[cell] != 0;
+		}
+	}
+	
+	@Benchmark
+	public int writeBoard() {
+		buffer.clear();
+		MultiplayerProtocol.writeBoard(buffer, 1, sequence++, cells, given);
+		
+		return buffer.position();
+	}
+	
+	@Benchmark
+	public int boardRoundTrip() throws ProtocolException {
+		buffer.clear();
+		MultiplayerProtocol.writeBoard(buffer, 1, sequence++, cells, given);
+		buffer.flip();
+		MultiplayerProtocol.read(buffer, frame);
+		
+		return frame.getType();
+	}
+	
+	@Benchmark
+	public int cellRoundTrip() throws ProtocolException {
+		buffer.clear();
+		MultiplayerProtocol.writeCell(buffer, sequence % Grid.CELLS,
+				sequence % 9 + 1, 2, sequence++);
+		buffer.flip();
+		MultiplayerProtocol.read(buffer, frame);
+		
+		return frame.getType();
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(STREAM)
+	public int cellStream() throws ProtocolException {
+		buffer.clear();
+		for (int i=0; i<STREAM; i++) {
+			MultiplayerProtocol.writeCell(buffer, i % Grid.CELLS,
+					i % 9 + 1, 2, sequence++);
+		}
+		
+		buffer.flip();
+		int frames = 0;
+		while (MultiplayerProtocol.read(buffer, frame)) frames++;
+		
+		return frames;
+	}
+}
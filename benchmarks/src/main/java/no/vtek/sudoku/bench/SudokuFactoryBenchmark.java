@@ -0,0 +1,139 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Vegard Løkken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package no.vtek.sudoku.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import no.vtek.sudoku.Grid;
+import no.vtek.sudoku.SudokuFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for game generation, solving and validation.
+ * 
+ * Solving and validation run over fixed corpora generated from a seed,
+ * so results can be compared between engine changes.
+ * 
+ * @author Vegard Løkken
+ * @version 0.25
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SudokuFactoryBenchmark {
+	private static final long SEED = 2012;
+	private static final int CORPUS_SIZE = 256;
+	
+	@State(Scope.Benchmark)
+	public static class Difficulty {
+		@Param({"50", "65", "75"})
+		public int difficulty;
+	}
+	
+	/**
+	 * Puzzles of one difficulty level along with their solutions.
+	 */
+	@State(Scope.Thread)
+	public static class Corpus {
+		@Param({"50", "65", "75"})
+		public int difficulty;
+		
+		private int[][][] puzzles = new int[CORPUS_SIZE][][];
+		private int[][][] solutions = new int[CORPUS_SIZE][][];
+		private int next = 0;
+		private int cell = 0;
+		
+		@Setup
+		public void setup() {
+			Random random = new Random(SEED + difficulty);
+			int clues = SudokuFactory.getClues(difficulty);
+			
+			for (int i=0; i<CORPUS_SIZE; i++) {
+				Grid solution = SudokuFactory.createGrid(random);
+				puzzles[i] = SudokuFactory.createPuzzle(
+						solution, clues, true, random).toArray();
+				solutions[i] = solution.toArray();
+			}
+		}
+		
+		int[][] nextPuzzle() {
+			next = (next + 1) % CORPUS_SIZE;
+			return puzzles[next];
+		}
+		
+		int[][] nextSolution() {
+			next = (next + 1) % CORPUS_SIZE;
+			return solutions[next];
+		}
+		
+		int nextCell() {
+			cell = (cell + 1) % Grid.CELLS;
+			return cell;
+		}
+	}
+	
+	@Benchmark
+	public int[][] createGame() {
+		return SudokuFactory.createGame();
+	}
+	
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public int[][] createGameWithDifficulty(Difficulty level) {
+		return SudokuFactory.createGame(level.difficulty);
+	}
+	
+	@Benchmark
+	public int[][] finishGame(Corpus corpus) {
+		return SudokuFactory.finishGame(corpus.nextPuzzle());
+	}
+	
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public int[] getPossibleNumbers(Corpus corpus) {
+		int cell = corpus.nextCell();
+		return SudokuFactory.getPossibleNumbers(corpus.nextPuzzle(),
+				Grid.rowOf(cell), Grid.colOf(cell));
+	}
+	
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public boolean checkValid(Corpus corpus) {
+		return SudokuFactory.checkValid(corpus.nextSolution());
+	}
+}
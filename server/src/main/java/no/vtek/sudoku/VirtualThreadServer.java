@@ -0,0 +1,312 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Vegard Løkken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package no.vtek.sudoku;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Server for network games with one virtual thread per connection, as a
+ * plainer alternative to the selector based {@link MultiplayerServer}.
+ * Rooms, rules and frames are the same for both.
+ * 
+ * Each player is read with blocking calls on its own virtual thread, and
+ * a second virtual thread writes what the room sends, so a slow player
+ * never holds up a room. Every open room has a virtual thread of its own
+ * that clears the cell locks that have run out. An idle player holds no
+ * output buffer; one is taken from a pool while there is something to
+ * write, so tens of thousands of idle players fit in a small heap.
+ * 
+ * Run on its own, it also serves the global highscores, with a virtual
+ * thread per connection there too. Needs Java 21.
+ * 
+ * @author Vegard Løkken
+ * @version 0.25
+ */
+public class VirtualThreadServer implements Runnable {
+	private static final int IN_CAPACITY = 8 * MultiplayerProtocol.MAX_SIZE;
+	private static final int OUT_CAPACITY = 4 * 1024;
+	private static final int POOLED = 1024;
+	private static final int CHUNK = 512;
+	private static final long SWEEP = 1000;
+	
+	private final ServerSocket serverSocket;
+	private final BufferPool outPool = new BufferPool(OUT_CAPACITY, POOLED);
+	private final GameRooms rooms = new GameRooms() {
+		@Override
+		protected void opened(GameRoom room) {
+			Thread.ofVirtual().name("room-" + room.getId())
+					.start(() -> sweep(room));
+		}
+	};
+	
+	/**
+	 * Binds the server to a port on this machine.
+	 * 
+	 * @param port The port, or 0 for any free port
+	 * @throws IOException If the port can't be bound
+	 */
+	public VirtualThreadServer(int port) throws IOException {
+		this(port, null);
+	}
+	
+	/**
+	 * Binds the server to a port.
+	 * 
+	 * @param port The port, or 0 for any free port
+	 * @param address The address to listen on, or null for localhost
+	 * @throws IOException If the port can't be bound
+	 */
+	public VirtualThreadServer(int port, InetAddress address)
+			throws IOException {
+		
+		serverSocket = new ServerSocket(port, 1000, address != null
+				? address : InetAddress.getByName(null));
+	}
+	
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+	
+	/**
+	 * Accepts connections on a background thread.
+	 */
+	public void start() {
+		Thread thread = new Thread(this, "VirtualThreadServer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	/**
+	 * Accepts connections until the server is stopped.
+	 */
+	@Override
+	public void run() {
+		while (!serverSocket.isClosed()) {
+			try {
+				Socket socket = serverSocket.accept();
+				socket.setTcpNoDelay(true);
+				
+				Player player = new Player(socket);
+				Thread.ofVirtual().name("player-in").start(player::read);
+				Thread.ofVirtual().name("player-out").start(player::write);
+				
+			} catch (IOException e) {
+				if (!serverSocket.isClosed()) {
+					System.err.println("Error while accepting connection");
+				}
+			}
+		}
+	}
+	
+	public void stop() {
+		try {
+			serverSocket.close();
+		} catch (IOException e) {
+			// Closing anyway
+		}
+	}
+	
+	/**
+	 * @return Number of rooms with players in them
+	 */
+	public int getRoomCount() {
+		return rooms.size();
+	}
+	
+	private void sweep(GameRoom room) {
+		ByteBuffer buffer = ByteBuffer.allocate(MultiplayerProtocol.MAX_SIZE);
+		
+		try {
+			while (room.isOpen()) {
+				Thread.sleep(SWEEP);
+				room.expire(buffer);
+			}
+		} catch (InterruptedException e) {
+			// Room goes away with the server
+		}
+	}
+	
+	/**
+	 * One player, read and written on two virtual threads of its own.
+	 * Rooms may send frames to it from any thread.
+	 */
+	private class Player extends GameRoom.Member {
+		private final Socket socket;
+		private final ReentrantLock lock = new ReentrantLock();
+		private final Condition pending = lock.newCondition();
+		private ByteBuffer out = null;
+		private boolean closed = false;
+		
+		Player(Socket socket) {
+			this.socket = socket;
+		}
+		
+		@Override
+		void send(ByteBuffer frame) {
+			lock.lock();
+			try {
+				if (closed) return;
+				
+				if (out == null) out = outPool.acquire();
+				
+				if (out.remaining() < frame.remaining()) {
+					close();
+					return;
+				}
+				
+				int start = frame.position();
+				out.put(frame);
+				frame.position(start);
+				pending.signal();
+				
+			} finally {
+				lock.unlock();
+			}
+		}
+		
+		/**
+		 * Reads and handles frames until the player goes away.
+		 */
+		void read() {
+			ByteBuffer in = ByteBuffer.allocate(IN_CAPACITY);
+			ByteBuffer buffer = ByteBuffer.allocate(MultiplayerProtocol.MAX_SIZE);
+			MultiplayerProtocol.Frame frame = new MultiplayerProtocol.Frame();
+			
+			try {
+				InputStream stream = socket.getInputStream();
+				
+				while (true) {
+					int read = stream.read(in.array(), in.position(),
+							in.remaining());
+					if (read < 0) break;
+					
+					in.position(in.position() + read);
+					in.flip();
+					while (MultiplayerProtocol.read(in, frame)) {
+						handle(frame, rooms, buffer);
+					}
+					in.compact();
+				}
+				
+			} catch (IOException e) {
+				// Player is dropped
+			} finally {
+				close();
+				leave(rooms);
+			}
+		}
+		
+		/**
+		 * Writes what is sent to the player until it is closed.
+		 */
+		void write() {
+			byte[] chunk = new byte[CHUNK];
+			
+			try {
+				OutputStream stream = socket.getOutputStream();
+				
+				while (true) {
+					int length;
+					
+					lock.lock();
+					try {
+						while (!closed && (out == null || out.position() == 0)) {
+							pending.await();
+						}
+						if (closed) return;
+						
+						out.flip();
+						length = Math.min(out.remaining(), CHUNK);
+						out.get(chunk, 0, length);
+						out.compact();
+						
+						if (out.position() == 0) {
+							outPool.release(out);
+							out = null;
+						}
+						
+					} finally {
+						lock.unlock();
+					}
+					
+					stream.write(chunk, 0, length);
+				}
+				
+			} catch (IOException | InterruptedException e) {
+				close();
+			}
+		}
+		
+		@Override
+		void close() {
+			lock.lock();
+			try {
+				if (closed) return;
+				
+				closed = true;
+				if (out != null) {
+					outPool.release(out);
+					out = null;
+				}
+				pending.signalAll();
+				
+			} finally {
+				lock.unlock();
+			}
+			
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// Closed anyway
+			}
+		}
+	}
+	
+	public static void main(String[] args) throws IOException {
+		int port = args.length > 0 ? Integer.parseInt(args[0])
+				: MultiplayerServer.DEFAULT_PORT;
+		int highscorePort = args.length > 1 ? Integer.parseInt(args[1])
+				: HighscoreServer.DEFAULT_PORT;
+		
+		HighscoreServer highscores = new HighscoreServer(highscorePort, null,
+				Executors.newVirtualThreadPerTaskExecutor());
+		highscores.start();
+		
+		VirtualThreadServer server = new VirtualThreadServer(port);
+		System.err.println("Multiplayer server listening on port "
+				+ server.getPort() + ", highscores on port "
+				+ highscores.getPort());
+		server.run();
+	}
+}
@@ -0,0 +1,163 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Vegard Løkken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package no.vtek.sudoku;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Saves the game in progress in the background.
+ * 
+ * Saves are written on one background thread, {@link #DELAY}
+ * milliseconds after they are asked for. A save asked for while another
+ * one is waiting replaces it, so a burst of moves is written only once.
+ * Removing the save goes through the same thread, so it can't be
+ * overtaken by a save that was already waiting.
+ * 
+ * @author Vegard Løkken
+ * @version 0.25
+ */
+class Autosave {
+	public static final String FILENAME = "Sudoku.save";
+	public static final long DELAY = 1000;
+	
+	private static final long FLUSH_TIMEOUT = 2000;
+	
+	private final File file;
+	private final ScheduledExecutorService executor;
+	
+	/* Guarded by this */
+	private SavedGame pending = null;
+	private boolean delete = false;
+	private boolean scheduled = false;
+	
+	public Autosave(File file) {
+		this.file = file;
+		
+		executor = Executors.newSingleThreadScheduledExecutor(
+				new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "Autosave");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+	
+	/**
+	 * Reads the saved game, if any. Only meant to be used before anything
+	 * is saved.
+	 * 
+	 * @return The game, or null if there is none or it can't be used
+	 */
+	public SavedGame load() {
+		return SavedGame.read(file);
+	}
+	
+	/**
+	 * Saves a game a little later, replacing any save still waiting.
+	 * 
+	 * @param game The game
+	 */
+	public synchronized void save(SavedGame game) {
+		pending = game;
+		delete = false;
+		schedule(DELAY);
+	}
+	
+	/**
+	 * Removes the saved game, for example when it is completed.
+	 */
+	public synchronized void discard() {
+		pending = null;
+		delete = true;
+		schedule(0);
+	}
+	
+	/**
+	 * Writes whatever is waiting right away, waiting for it to finish.
+	 * Used when the game is closed.
+	 */
+	public void flush() {
+		try {
+			executor.submit(new Runnable() {
+				@Override
+				public void run() {
+					write();
+				}
+			}).get(FLUSH_TIMEOUT, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			System.err.println("Error while saving game");
+		} catch (TimeoutException e) {
+			System.err.println("Error while saving game");
+		}
+	}
+	
+	private void schedule(long delay) {
+		if (scheduled && delay > 0) return;
+		scheduled = true;
+		
+		executor.schedule(new Runnable() {
+			@Override
+			public void run() {
+				write();
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Only called on the background thread.
+	 */
+	private void write() {
+		SavedGame game;
+		boolean remove;
+		synchronized (this) {
+			game = pending;
+			remove = delete;
+			pending = null;
+			delete = false;
+			scheduled = false;
+		}
+		
+		if (game != null) {
+			try {
+				game.write(file);
+			} catch (IOException e) {
+				System.err.println("Error while saving game");
+			}
+		} else if (remove && !SavedGame.delete(file)) {
+			System.err.println("Error while removing saved game");
+		}
+	}
+}
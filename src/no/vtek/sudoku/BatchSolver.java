@@ -0,0 +1,275 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Vegard Løkken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package no.vtek.sudoku;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Headless solver for files of puzzles, one per line as 81 characters
+ * where '0' or '.' is an empty cell.
+ * 
+ * The file is read in batches that are solved on all cores. For every
+ * puzzle one line is written, in input order: the solution, or
+ * "unsolvable", "not unique" or "invalid".
+ * 
+ * <pre>java -cp Sudoku.jar no.vtek.sudoku.BatchSolver input [output]</pre>
+ * 
+ * @author Vegard Løkken
+ * @version 0.25
+ */
+public class BatchSolver {
+	private static final int BATCH_SIZE = 4096;
+	private static final int LINE_SIZE = Grid.CELLS + 1;
+	private static final byte[] UNSOLVABLE = "unsolvable\n".getBytes();
+	private static final byte[] NOT_UNIQUE = "not unique\n".getBytes();
+	private static final byte[] INVALID = "invalid\n".getBytes();
+	
+	private final ExecutorService executor;
+	private final int maxPending;
+	
+	private long processed = 0;
+	private long solved = 0;
+	private long unsolvable = 0;
+	private long notUnique = 0;
+	private long invalid = 0;
+	
+	public BatchSolver(int threads) {
+		executor = Executors.newFixedThreadPool(threads);
+		maxPending = threads * 2;
+	}
+	
+	/**
+	 * Solves all puzzles from one channel and writes the results to
+	 * another.
+	 * 
+	 * @param in The puzzles
+	 * @param out Where to write the results
+	 * @throws IOException If reading or writing fails
+	 */
+	public void solve(FileChannel in, WritableByteChannel out)
+			throws IOException {
+		
+		ArrayDeque<Future<Batch>> pending = new ArrayDeque<Future<Batch>>();
+		ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+		Batch batch = new Batch();
+		int length = 0;
+		boolean ok = true;
+		
+		while (in.read(buffer) != -1) {
+			buffer.flip();
+			
+			while (buffer.hasRemaining()) {
+				byte b = buffer.get();
+				
+				if (b == '\n') {
+					if (length > 0) {
+						batch.end(ok && length == Grid.CELLS);
+						
+						if (batch.count == BATCH_SIZE) {
+							submit(batch, pending, out);
+							batch = new Batch();
+						}
+					}
+					length = 0;
+					ok = true;
+				} else if (b != '\r') {
+					if (length < Grid.CELLS) {
+						ok &= batch.set(length, b);
+					}
+					length++;
+				}
+			}
+			
+			buffer.clear();
+		}
+		
+		// Last line without a line break
+		if (length > 0) batch.end(ok && length == Grid.CELLS);
+		if (batch.count > 0) submit(batch, pending, out);
+		
+		while (!pending.isEmpty()) write(pending.poll(), out);
+	}
+	
+	public void shutdown() {
+		executor.shutdown();
+	}
+	
+	private void submit(final Batch batch, ArrayDeque<Future<Batch>> pending,
+			WritableByteChannel out) throws IOException {
+		
+		pending.add(executor.submit(new Callable<Batch>() {
+			@Override
+			public Batch call() {
+				batch.solve();
+				return batch;
+			}
+		}));
+		
+		// Keep memory use flat by writing out finished batches in order
+		while (pending.size() > maxPending) write(pending.poll(), out);
+	}
+	
+	private void write(Future<Batch> future, WritableByteChannel out)
+			throws IOException {
+		
+		Batch batch;
+		try {
+			batch = future.get();
+		} catch (InterruptedException e) {
+			throw new IOException("Interrupted while solving");
+		} catch (ExecutionException e) {
+			throw new IOException("Error while solving: " + e.getCause());
+		}
+		
+		processed += batch.count;
+		solved += batch.count - batch.unsolvable - batch.notUnique
+				- batch.invalid;
+		unsolvable += batch.unsolvable;
+		notUnique += batch.notUnique;
+		invalid += batch.invalid;
+		
+		ByteBuffer output = ByteBuffer.wrap(batch.output, 0, batch.length);
+		while (output.hasRemaining()) out.write(output);
+	}
+	
+	/**
+	 * A batch of puzzles and, once solved, their results.
+	 */
+	private static class Batch {
+		private final byte[] cells = new byte[BATCH_SIZE * Grid.CELLS];
+		private final boolean[] valid = new boolean[BATCH_SIZE];
+		private int count = 0;
+		
+		private byte[] output;
+		private int length;
+		private int unsolvable, notUnique, invalid;
+		
+		/**
+		 * @return False if the character isn't a number or empty cell
+		 */
+		boolean set(int cell, byte b) {
+			if (b >= '1' && b <= '9') {
+				cells[count * Grid.CELLS + cell] = (byte) (b - '0');
+			} else if (b == '0' || b == '.') {
+				cells[count * Grid.CELLS + cell] = 0;
+			} else {
+				return false;
+			}
+			return true;
+		}
+		
+		void end(boolean ok) {
+			valid[count++] = ok;
+		}
+		
+		void solve() {
+			output = new byte[count * LINE_SIZE];
+			Grid puzzle = new Grid();
+			Grid solution = new Grid();
+			
+			for (int i=0; i<count; i++) {
+				if (!valid[i]) {
+					append(INVALID);
+					invalid++;
+					continue;
+				}
+				
+				puzzle.reset();
+				boolean ok = true;
+				for (int cell=0; cell<Grid.CELLS; cell++) {
+					int num = cells[i * Grid.CELLS + cell];
+					if (num != 0) ok &= puzzle.place(cell, num);
+				}
+				
+				int solutions = ok
+						? SudokuFactory.solve(puzzle, solution, 2) : 0;
+				
+				if (solutions == 0) {
+					append(UNSOLVABLE);
+					unsolvable++;
+				} else if (solutions > 1) {
+					append(NOT_UNIQUE);
+					notUnique++;
+				} else {
+					for (int cell=0; cell<Grid.CELLS; cell++) {
+						output[length++] = (byte) ('0' + solution.get(cell));
+					}
+					output[length++] = '\n';
+				}
+			}
+		}
+		
+		private void append(byte[] bytes) {
+			System.arraycopy(bytes, 0, output, length, bytes.length);
+			length += bytes.length;
+		}
+	}
+	
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1 || args.length > 2) {
+			System.err.println("Usage: BatchSolver <input> [output]");
+			System.exit(1);
+		}
+		
+		int threads = Runtime.getRuntime().availableProcessors();
+		BatchSolver batchSolver = new BatchSolver(threads);
+		
+		FileInputStream in = new FileInputStream(args[0]);
+		WritableByteChannel out = args.length > 1
+				? new FileOutputStream(args[1]).getChannel()
+				: Channels.newChannel(System.out);
+		
+		long start = System.nanoTime();
+		try {
+			batchSolver.solve(in.getChannel(), out);
+		} finally {
+			batchSolver.shutdown();
+			in.close();
+			out.close();
+		}
+		long ms = Math.max(1, (System.nanoTime() - start) / 1000000);
+		
+		System.err.println("Processed " + batchSolver.processed
+				+ " puzzles in " + ms + " ms on " + threads + " threads ("
+				+ batchSolver.processed * 1000 / ms + " puzzles/s)");
+		System.err.println("Solved: " + batchSolver.solved
+				+ ", unsolvable: " + batchSolver.unsolvable
+				+ ", not unique: " + batchSolver.notUnique
+				+ ", invalid: " + batchSolver.invalid);
+	}
+}
@@ -0,0 +1,73 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Vegard Løkken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package no.vtek.sudoku;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Pool of direct byte buffers of one size, so that buffers can be handed
+ * out and back without allocating each time.
+ * 
+ * @author Vegard Løkken
+ * @version 0.25
+ */
+final class BufferPool {
+	private final int bufferSize;
+	private final ByteBuffer[] free;
+	private int count = 0;
+	
+	/**
+	 * @param bufferSize Size of each buffer
+	 * @param capacity Most buffers to keep when they are given back
+	 */
+	BufferPool(int bufferSize, int capacity) {
+		this.bufferSize = bufferSize;
+		this.free = new ByteBuffer[capacity];
+	}
+	
+	/**
+	 * @return An empty buffer, new if none are free
+	 */
+	synchronized ByteBuffer acquire() {
+		if (count == 0) return ByteBuffer.allocateDirect(bufferSize);
+		
+		ByteBuffer buffer = free[--count];
+		free[count] = null;
+		
+		return buffer;
+	}
+	
+	/**
+	 * Gives a buffer back. It must not be used after this.
+	 * 
+	 * @param buffer The buffer
+	 */
+	synchronized void release(ByteBuffer buffer) {
+		if (count == free.length) return;
+		
+		buffer.clear();
+		free[count++] = buffer;
+	}
+}
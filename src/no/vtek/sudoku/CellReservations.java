@@ -0,0 +1,191 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Vegard Løkken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package no.vtek.sudoku;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Which player is editing which cell of a shared board.
+ * 
+ * Each cell holds its owner, a version and the time the lease runs out
+ * together in one long, and is only changed by compare and set, so any
+ * number of threads can claim, renew, release and expire leases without
+ * locking. A lease that has run out counts as free even before it is
+ * cleared.
+ * 
+ * Every change to a cell bumps its version, and the changes return the
+ * new slot, so the version can be sent along with the change. Players
+ * that get two changes to a cell in the wrong order can then tell which
+ * one is newer. A free slot keeps its last owner and its version.
+ * 
+ * @author Vegard Løkken
+ * @version 0.25
+ */
+final class CellReservations {
+	
+	/** How long a lease lasts unless it is renewed, in milliseconds */
+	static final long LEASE = 10000;
+	
+	/** Returned by the changes when nothing was changed */
+	static final long UNCHANGED = -1;
+	
+	private static final int OWNER_SHIFT = 56;
+	private static final int VERSION_SHIFT = 40;
+	private static final int VERSION_MASK = 0xFFFF;
+	private static final long EXPIRY_MASK = (1L << VERSION_SHIFT) - 1;
+	private static final int MAX_OWNER = 0x7E;
+	
+	private final AtomicLongArray slots;
+	private final long base = System.nanoTime();
+	
+	/**
+	 * @param cells Number of cells
+	 */
+	CellReservations(int cells) {
+		slots = new AtomicLongArray(cells);
+	}
+	
+	/**
+	 * @return Milliseconds on the clock used for the leases
+	 */
+	long now() {
+		return (System.nanoTime() - base) / 1000000;
+	}
+	
+	/**
+	 * Claims a cell, or renews the lease if the owner already has it.
+	 * 
+	 * @param cell The cell
+	 * @param owner The player, 0 - 126
+	 * @param now The time from {@link #now()}
+	 * @return The new slot, or {@link #UNCHANGED} if someone else holds
+	 *         the cell
+	 */
+	long claim(int cell, int owner, long now) {
+		if (owner < 0 || owner > MAX_OWNER) {
+			throw new IllegalArgumentException("Bad owner " + owner);
+		}
+		
+		while (true) {
+			long slot = slots.get(cell);
+			
+			if (isHeld(slot, now) && getOwner(slot) != owner) return UNCHANGED;
+			
+			long claimed = slot(owner, getVersion(slot) + 1, now + LEASE);
+			if (slots.compareAndSet(cell, slot, claimed)) return claimed;
+		}
+	}
+	
+	/**
+	 * Releases a cell, if the owner holds it.
+	 * 
+	 * @param cell The cell
+	 * @param owner The player
+	 * @return The new slot, or {@link #UNCHANGED} if the owner didn't
+	 *         hold it
+	 */
+	long release(int cell, int owner) {
+		while (true) {
+			long slot = slots.get(cell);
+			
+			if (isFree(slot) || getOwner(slot) != owner) return UNCHANGED;
+			
+			long released = slot(owner, getVersion(slot) + 1, 0);
+			if (slots.compareAndSet(cell, slot, released)) return released;
+		}
+	}
+	
+	/**
+	 * Clears a lease that has run out.
+	 * 
+	 * @param cell The cell
+	 * @param now The time from {@link #now()}
+	 * @return The new slot, holding the owner of the lease that was
+	 *         cleared, or {@link #UNCHANGED}
+	 */
+	long expire(int cell, long now) {
+		while (true) {
+			long slot = slots.get(cell);
+			
+			if (isFree(slot) || isHeld(slot, now)) return UNCHANGED;
+			
+			long expired = slot(getOwner(slot), getVersion(slot) + 1, 0);
+			if (slots.compareAndSet(cell, slot, expired)) return expired;
+		}
+	}
+	
+	/**
+	 * @param cell The cell
+	 * @return The slot as it is now
+	 */
+	long get(int cell) {
+		return slots.get(cell);
+	}
+	
+	/**
+	 * @param cell The cell
+	 * @param now The time from {@link #now()}
+	 * @return The player holding the cell, or -1 if it is free
+	 */
+	int getOwner(int cell, long now) {
+		long slot = slots.get(cell);
+		
+		return isHeld(slot, now) ? getOwner(slot) : -1;
+	}
+	
+	/**
+	 * @param slot A slot
+	 * @param now The time from {@link #now()}
+	 * @return True if the lease in the slot hasn't run out
+	 */
+	static boolean isHeld(long slot, long now) {
+		return (slot & EXPIRY_MASK) > now;
+	}
+	
+	/**
+	 * @param slot A slot
+	 * @return The player holding the lease, or the last one that did
+	 */
+	static int getOwner(long slot) {
+		return (int) (slot >>> OWNER_SHIFT) - 1;
+	}
+	
+	/**
+	 * @param slot A slot
+	 * @return Number of changes made to the cell, wrapping at 65536
+	 */
+	static int getVersion(long slot) {
+		return (int) (slot >>> VERSION_SHIFT) & VERSION_MASK;
+	}
+	
+	private static boolean isFree(long slot) {
+		return (slot & EXPIRY_MASK) == 0;
+	}
+	
+	private static long slot(int owner, int version, long expiry) {
+		return (long) (owner + 1) << OWNER_SHIFT
+				| (long) (version & VERSION_MASK) << VERSION_SHIFT | expiry;
+	}
+}
@@ -0,0 +1,227 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Vegard Løkken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package no.vtek.sudoku;
+
+/**
+ * Exact cover solver (Knuth's Algorithm X with dancing links).
+ * 
+ * The sudoku rules are modelled as 324 constraints (each cell has one
+ * number, and each row, column and box has each number once) and 729
+ * options (a number in a cell). The whole node matrix is allocated once
+ * as flat int arrays. Solving covers the given numbers, searches and then
+ * uncovers everything again, so the same instance can be reused for any
+ * number of puzzles without allocating. An instance is not thread safe.
+ *
+ * @author Vegard Løkken
+ * @version 0.25
+ */
+final class DancingLinks {
+	private static final int COLUMNS = 4 * Grid.CELLS;
+	private static final int OPTIONS = Grid.SIZE * Grid.CELLS;
+	private static final int ROOT = 0;
+	private static final int NODES = 1 + COLUMNS + 4 * OPTIONS;
+	
+	private final int[] left = new int[NODES];
+	private final int[] right = new int[NODES];
+	private final int[] up = new int[NODES];
+	private final int[] down = new int[NODES];
+	private final int[] column = new int[NODES];
+	private final int[] option = new int[NODES];
+	private final int[] size = new int[1 + COLUMNS];
+	
+	private final int[] chosen = new int[Grid.CELLS];
+	private final int[] givens = new int[Grid.CELLS];
+	private int depth;
+	private int found;
+	private int limit;
+	private Grid puzzle;
+	private Grid solution;
+	
+	public DancingLinks() {
+		
+		// Column headers
+		for (int c=0; c<=COLUMNS; c++) {
+			left[c] = c > 0 ? c - 1 : COLUMNS;
+			right[c] = c < COLUMNS ? c + 1 : 0;
+			up[c] = c;
+			down[c] = c;
+		}
+		
+		// One row of four nodes for each number in each cell
+		int[] cols = new int[4];
+		for (int o=0; o<OPTIONS; o++) {
+			int cell = o / Grid.SIZE;
+			int num = o % Grid.SIZE;
+			
+			cols[0] = 1 + cell;
+			for (int k=0; k<3; k++) {
+				int unit = Topology.unit(cell, k);
+				cols[k + 1] = 1 + Grid.CELLS + unit * Grid.SIZE + num;
+			}
+			
+			int first = firstNode(o);
+			for (int k=0; k<4; k++) {
+				int n = first + k;
+				int c = cols[k];
+				
+				column[n] = c;
+				option[n] = o;
+				left[n] = first + (k + 3) % 4;
+				right[n] = first + (k + 1) % 4;
+				
+				up[n] = up[c];
+				down[n] = c;
+				down[up[c]] = n;
+				up[c] = n;
+				size[c]++;
+			}
+		}
+	}
+	
+	/**
+	 * Solves a puzzle.
+	 * 
+	 * @param puzzle The puzzle to solve, left untouched
+	 * @param solution Grid to write the solution into
+	 * @return True if a solution was found
+	 */
+	public boolean solve(Grid puzzle, Grid solution) {
+		return search(puzzle, solution, 1) > 0;
+	}
+	
+	/**
+	 * Searches for solutions to a puzzle, stopping when the limit is
+	 * reached.
+	 * 
+	 * @param puzzle The puzzle to solve, left untouched
+	 * @param solution Grid to write the first solution into, or null
+	 * @param limit Stop after this many solutions
+	 * @return Number of solutions found, at most limit
+	 */
+	int search(Grid puzzle, Grid solution, int limit) {
+		if (!puzzle.isValid()) return 0;
+		
+		this.puzzle = puzzle;
+		this.solution = solution;
+		this.limit = limit;
+		depth = 0;
+		found = 0;
+		
+		// Cover the given numbers
+		int numGivens = 0;
+		for (int cell=0; cell<Grid.CELLS; cell++) {
+			int num = puzzle.get(cell);
+			if (num != 0) {
+				int n = firstNode(cell * Grid.SIZE + num - 1);
+				cover(column[n]);
+				for (int j=right[n]; j!=n; j=right[j]) cover(column[j]);
+				givens[numGivens++] = n;
+			}
+		}
+		
+		search();
+		
+		// Uncover them again in reverse order
+		while (numGivens > 0) {
+			int n = givens[--numGivens];
+			for (int j=left[n]; j!=n; j=left[j]) uncover(column[j]);
+			uncover(column[n]);
+		}
+		
+		this.puzzle = null;
+		this.solution = null;
+		return found;
+	}
+	
+	/**
+	 * @return True when the limit has been reached
+	 */
+	private boolean search() {
+		if (right[ROOT] == ROOT) {
+			if (found == 0 && solution != null) {
+				solution.copyFrom(puzzle);
+				for (int k=0; k<depth; k++) {
+					solution.place(chosen[k] / Grid.SIZE,
+							chosen[k] % Grid.SIZE + 1);
+				}
+			}
+			return ++found >= limit;
+		}
+		
+		// Choose the column with fewest options left
+		int c = right[ROOT];
+		for (int j=right[c]; j!=ROOT && size[c]>1; j=right[j]) {
+			if (size[j] < size[c]) c = j;
+		}
+		if (size[c] == 0) return false;
+		
+		boolean done = false;
+		cover(c);
+		
+		for (int r=down[c]; r!=c && !done; r=down[r]) {
+			chosen[depth++] = option[r];
+			for (int j=right[r]; j!=r; j=right[j]) cover(column[j]);
+			
+			done = search();
+			
+			for (int j=left[r]; j!=r; j=left[j]) uncover(column[j]);
+			depth--;
+		}
+		
+		uncover(c);
+		return done;
+	}
+	
+	private void cover(int c) {
+		right[left[c]] = right[c];
+		left[right[c]] = left[c];
+		
+		for (int i=down[c]; i!=c; i=down[i]) {
+			for (int j=right[i]; j!=i; j=right[j]) {
+				down[up[j]] = down[j];
+				up[down[j]] = up[j];
+				size[column[j]]--;
+			}
+		}
+	}
+	
+	private void uncover(int c) {
+		for (int i=up[c]; i!=c; i=up[i]) {
+			for (int j=left[i]; j!=i; j=left[j]) {
+				size[column[j]]++;
+				down[up[j]] = j;
+				up[down[j]] = j;
+			}
+		}
+		
+		right[left[c]] = c;
+		left[right[c]] = c;
+	}
+	
+	private static int firstNode(int option) {
+		return 1 + COLUMNS + 4 * option;
+	}
+}
@@ -0,0 +1,84 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Vegard Løkken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package no.vtek.sudoku;
+
+/**
+ * Rates how hard a puzzle is for a person by solving it with human
+ * techniques. Every step adds the weight of the technique used to the
+ * score, and if the techniques run out the puzzle needs guessing.
+ * 
+ * An instance can be reused for any number of puzzles without
+ * allocating, but is not thread safe.
+ * 
+ * @author Vegard Løkken
+ * @version 0.25
+ */
+public final class DifficultyRater {
+	private final LogicSolver solver = new LogicSolver();
+	private Technique hardest;
+	
+	/**
+	 * Rates a puzzle.
+	 * 
+	 * @param puzzle The puzzle, left untouched
+	 * @return The score, higher is harder, or -1 if the puzzle has no
+	 *		solution
+	 */
+	public int rate(Grid puzzle) {
+		solver.load(puzzle);
+		hardest = null;
+		
+		int score = 0;
+		while (solver.step()) {
+			Technique technique = solver.getTechnique();
+			score += technique.getWeight();
+			
+			if (hardest == null || technique.compareTo(hardest) > 0) {
+				hardest = technique;
+			}
+		}
+		
+		if (solver.isBroken()) {
+			hardest = null;
+			return -1;
+		}
+		
+		if (!solver.isSolved()) {
+			hardest = Technique.GUESS;
+			score += Technique.GUESS.getWeight();
+		}
+		
+		return score;
+	}
+	
+	/**
+	 * @return The hardest technique needed by the last rated puzzle,
+	 *		or null if it had no solution or was already solved
+	 */
+	public Technique getHardest() {
+		return hardest;
+	}
+}
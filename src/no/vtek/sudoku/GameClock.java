@@ -0,0 +1,100 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Vegard Løkken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package no.vtek.sudoku;
+
+/**
+ * Keeps track of the time spent on a game.
+ * 
+ * Based on System.nanoTime, so changes to the wall clock don't affect
+ * it. Nothing runs in the background: the clock only remembers when the
+ * current interval started and how much time earlier intervals added
+ * up to, and computes the elapsed time when asked.
+ * 
+ * @author Vegard Løkken
+ * @version 0.25
+ */
+final class GameClock {
+	private long startedAt;
+	private long accumulated = 0;
+	private boolean running = false;
+	private boolean paused = false;
+	
+	/**
+	 * Starts the clock from zero.
+	 */
+	public synchronized void start() {
+		start(0);
+	}
+	
+	/**
+	 * Starts the clock from a time already spent, used when a saved game
+	 * is resumed.
+	 * 
+	 * @param elapsedMillis The time already spent in milliseconds
+	 */
+	public synchronized void start(long elapsedMillis) {
+		accumulated = elapsedMillis * 1000000;
+		startedAt = System.nanoTime();
+		running = true;
+		paused = false;
+	}
+	
+	public synchronized void stop() {
+		if (isTicking()) accumulated += System.nanoTime() - startedAt;
+		running = false;
+	}
+	
+	public synchronized void pause() {
+		if (isTicking()) {
+			accumulated += System.nanoTime() - startedAt;
+			paused = true;
+		}
+	}
+	
+	public synchronized void resume() {
+		if (running && paused) {
+			startedAt = System.nanoTime();
+			paused = false;
+		}
+	}
+	
+	/**
+	 * @return True if started and neither paused nor stopped
+	 */
+	public synchronized boolean isTicking() {
+		return running && !paused;
+	}
+	
+	/**
+	 * @return Time elapsed while ticking, in milliseconds
+	 */
+	public synchronized long getElapsedMillis() {
+		long elapsed = accumulated;
+		if (isTicking()) elapsed += System.nanoTime() - startedAt;
+		
+		return elapsed / 1000000;
+	}
+}
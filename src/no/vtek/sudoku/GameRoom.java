@@ -0,0 +1,440 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Vegard Løkken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package no.vtek.sudoku;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * One shared board in a network game.
+ * 
+ * The room holds the board as the server sees it, and every change goes
+ * through it in turn, so the last change to a cell is the one that
+ * stands. Each accepted change gets the next sequence number and is sent
+ * to all players in the room, the one who made it included.
+ * 
+ * Changes are checked against the solution. Given cells and cells that
+ * are already right can't be changed, and such a change is answered
+ * with the cell as it is. Filling in a right number gives a point, and
+ * if it replaces another player's wrong number, that player loses one.
+ * Emptying a cell costs a point.
+ * 
+ * While a player is filling in a cell, it can be locked for the others
+ * through {@link CellReservations}. Locking doesn't take any lock, so it
+ * never waits for the board or for other cells. The changes to a cell
+ * lock may be sent in another order than they were made, so each frame
+ * carries the version of the lock, and players drop the frames older
+ * than what they have. A lock is let go when the player changes the
+ * cell, leaves, or doesn't renew it in time.
+ * 
+ * @author Vegard Løkken
+ * @version 0.25
+ */
+class GameRoom {
+	static final int MAX_PLAYERS = 16;
+	
+	private final int id;
+	private final int[] cells = new int[Topology.CELLS];
+	private final int[] solution = new int[Topology.CELLS];
+	private final boolean[] given = new boolean[Topology.CELLS];
+	private final int[] writers = new int[Topology.CELLS];
+	private final Member[] players = new Member[MAX_PLAYERS];
+	private final int[] scores = new int[MAX_PLAYERS];
+	private final List<Member> members = new CopyOnWriteArrayList<Member>();
+	private final CellReservations reservations =
+			new CellReservations(Topology.CELLS);
+	private int sequence = 0;
+	private boolean open = true;
+	
+	/* Each frame is built here under the lock and copied to the players */
+	private final ByteBuffer frame =
+			ByteBuffer.allocate(MultiplayerProtocol.MAX_SIZE);
+	
+	/**
+	 * @param id The room number
+	 * @param game The game
+	 * @param solution The solved game
+	 */
+	GameRoom(int id, int[][] game, int[][] solution) {
+		this.id = id;
+		
+		for (int cell=0; cell<Topology.CELLS; cell++) {
+			int row = Topology.row(cell);
+			int col = Topology.col(cell);
+			
+			this.cells[cell] = game[row][col];
+			this.solution[cell] = solution[row][col];
+			this.given[cell] = game[row][col] != 0;
+			this.writers[cell] = -1;
+		}
+	}
+	
+	/**
+	 * A player's connection, however it is served. Frames from the player
+	 * are handled here, and the room sends frames back through it.
+	 */
+	abstract static class Member {
+		
+		/* Set by the room */
+		int player = -1;
+		
+		/* The room is set by the room, on whatever thread joins it */
+		private final Object state = new Object();
+		private volatile GameRoom room = null;
+		private boolean left = false;
+		private boolean joining = false;
+		
+		/**
+		 * Sends a frame to the player without waiting for it.
+		 * 
+		 * @param frame The frame, which is left as it was
+		 */
+		abstract void send(ByteBuffer frame);
+		
+		/**
+		 * Disconnects the player, when it couldn't join the room it asked
+		 * for. Called from any thread.
+		 */
+		abstract void close();
+		
+		/**
+		 * Handles a frame from the player.
+		 * 
+		 * @param frame The frame
+		 * @param rooms The rooms of the server
+		 * @param buffer Buffer of the calling thread to build frames in
+		 * @throws IOException If the frame is not allowed
+		 */
+		void handle(MultiplayerProtocol.Frame frame, GameRooms rooms,
+				ByteBuffer buffer) throws IOException {
+			
+			if (frame.type == MultiplayerProtocol.JOIN) {
+				if (joining) throw new IOException("Already joined");
+				
+				joining = true;
+				rooms.join(this, frame.room, frame.difficulty);
+				return;
+			}
+			
+			// The room is set before the board is sent
+			GameRoom room = this.room;
+			if (room == null) throw new IOException("Not joined");
+			
+			switch (frame.type) {
+				case MultiplayerProtocol.SET:
+					room.set(this, frame.cell, frame.number);
+					break;
+					
+				case MultiplayerProtocol.LOCK:
+					room.lock(this, frame.cell, buffer);
+					break;
+					
+				case MultiplayerProtocol.UNLOCK:
+					room.unlock(this, frame.cell, buffer);
+					break;
+					
+				default:
+					throw new IOException("Unexpected frame " + frame.type);
+			}
+		}
+		
+		/**
+		 * Takes the player out of its room, if it is in one, and keeps it
+		 * from joining one later. Must not be called while holding the
+		 * lock of the member.
+		 * 
+		 * @param rooms The rooms of the server
+		 */
+		void leave(GameRooms rooms) {
+			GameRoom room;
+			synchronized (state) {
+				left = true;
+				room = this.room;
+				this.room = null;
+			}
+			
+			if (room != null) rooms.leave(this, room);
+		}
+		
+		boolean hasLeft() {
+			synchronized (state) {
+				return left;
+			}
+		}
+		
+		/* Called by the room under its lock */
+		private boolean enter(GameRoom room) {
+			synchronized (state) {
+				if (left) return false;
+				
+				this.room = room;
+				return true;
+			}
+		}
+	}
+	
+	public int getId() {
+		return id;
+	}
+	
+	/**
+	 * @return False once the last player has left
+	 */
+	public synchronized boolean isOpen() {
+		return open;
+	}
+	
+	/**
+	 * Lets a player in and sends the board and the scores to it.
+	 * 
+	 * @param member The player
+	 * @return False if the room is full or closed, or the player has left
+	 */
+	public synchronized boolean join(Member member) {
+		if (!open) return false;
+		
+		int player = 0;
+		while (player < MAX_PLAYERS && players[player] != null) player++;
+		if (player == MAX_PLAYERS || !member.enter(this)) return false;
+		
+		players[player] = member;
+		scores[player] = 0;
+		member.player = player;
+		member.send(board(player));
+		members.add(member);
+		
+		// Lock changes sent since are newer than these, or are dropped
+		long now = reservations.now();
+		for (int cell=0; cell<Topology.CELLS; cell++) {
+			long slot = reservations.get(cell);
+			if (slot != 0) member.send(reservation(frame, cell, slot, now));
+		}
+		
+		for (int other=0; other<MAX_PLAYERS; other++) {
+			if (players[other] != null && other != player) {
+				member.send(score(other));
+			}
+		}
+		broadcast(score(player));
+		
+		return true;
+	}
+	
+	/**
+	 * Closes the room if nobody is in it, such as a new room whose player
+	 * left before getting in.
+	 * 
+	 * @return True if the room is closed
+	 */
+	public synchronized boolean closeIfEmpty() {
+		if (members.isEmpty()) open = false;
+		
+		return !open;
+	}
+	
+	/**
+	 * Lets a player out.
+	 * 
+	 * @param member The player
+	 * @return True if the room is now empty and closed
+	 */
+	public synchronized boolean leave(Member member) {
+		if (!members.remove(member)) return false;
+		
+		int player = member.player;
+		players[player] = null;
+		
+		// The id may be given to someone else
+		for (int cell=0; cell<Topology.CELLS; cell++) {
+			if (writers[cell] == player) writers[cell] = -1;
+			
+			long slot = reservations.release(cell, player);
+			if (slot != CellReservations.UNCHANGED) {
+				broadcast(reservation(frame, cell, slot, 0));
+			}
+		}
+		
+		if (members.isEmpty()) open = false;
+		
+		return !open;
+	}
+	
+	/**
+	 * Changes a cell for a player, and lets go of the player's lock on it.
+	 * 
+	 * @param member The player
+	 * @param cell The cell, 0 - 80
+	 * @param number The number, or 0 to empty the cell
+	 */
+	public synchronized void set(Member member,
+			int cell, int number) {
+		
+		int player = member.player;
+		
+		// Holding the lock keeps the others out until the cell is written
+		if (given[cell] || cells[cell] == solution[cell]
+				|| reservations.claim(cell, player, reservations.now())
+						== CellReservations.UNCHANGED) {
+			
+			member.send(cell(cell, Math.max(writers[cell], 0)));
+			return;
+		}
+		
+		if (cells[cell] != number) {
+			int previous = writers[cell];
+			
+			cells[cell] = number;
+			writers[cell] = number != 0 ? player : -1;
+			sequence++;
+			
+			broadcast(cell(cell, player));
+			
+			if (number == solution[cell]) {
+				score(player, 1);
+				if (previous >= 0 && previous != player) score(previous, -1);
+			} else if (number == 0) {
+				score(player, -1);
+			}
+		}
+		
+		long slot = reservations.release(cell, player);
+		if (slot != CellReservations.UNCHANGED) {
+			broadcast(reservation(frame, cell, slot, 0));
+		}
+	}
+	
+	/**
+	 * Locks a cell for a player, or renews the lock, and tells the others.
+	 * If someone else has it, only the player is told who.
+	 * 
+	 * @param member The player
+	 * @param cell The cell, 0 - 80
+	 * @param buffer Buffer of the calling thread to build frames in
+	 */
+	public void lock(Member member, int cell,
+			ByteBuffer buffer) {
+		
+		long now = reservations.now();
+		long slot = given[cell] ? CellReservations.UNCHANGED
+				: reservations.claim(cell, member.player, now);
+		
+		if (slot != CellReservations.UNCHANGED) {
+			broadcast(reservation(buffer, cell, slot, now));
+		} else {
+			member.send(reservation(buffer, cell, reservations.get(cell), now));
+		}
+	}
+	
+	/**
+	 * Lets go of a player's lock on a cell.
+	 * 
+	 * @param member The player
+	 * @param cell The cell, 0 - 80
+	 * @param buffer Buffer of the calling thread to build frames in
+	 */
+	public void unlock(Member member, int cell,
+			ByteBuffer buffer) {
+		
+		long slot = reservations.release(cell, member.player);
+		if (slot != CellReservations.UNCHANGED) {
+			broadcast(reservation(buffer, cell, slot, 0));
+		}
+	}
+	
+	/**
+	 * Clears the locks that have run out, and tells the players.
+	 * 
+	 * @param buffer Buffer of the calling thread to build frames in
+	 */
+	public void expire(ByteBuffer buffer) {
+		long now = reservations.now();
+		
+		for (int cell=0; cell<Topology.CELLS; cell++) {
+			long slot = reservations.expire(cell, now);
+			if (slot != CellReservations.UNCHANGED) {
+				broadcast(reservation(buffer, cell, slot, now));
+			}
+		}
+	}
+	
+	private void score(int player, int change) {
+		scores[player] += change;
+		broadcast(score(player));
+	}
+	
+	private ByteBuffer board(int player) {
+		frame.clear();
+		MultiplayerProtocol.writeBoard(frame, player, sequence, cells, given);
+		frame.flip();
+		
+		return frame;
+	}
+	
+	private ByteBuffer cell(int cell, int player) {
+		frame.clear();
+		MultiplayerProtocol.writeCell(frame, cell, cells[cell], player,
+				sequence);
+		frame.flip();
+		
+		return frame;
+	}
+	
+	private ByteBuffer score(int player) {
+		frame.clear();
+		MultiplayerProtocol.writeScore(frame, player, scores[player]);
+		frame.flip();
+		
+		return frame;
+	}
+	
+	/**
+	 * Builds a LOCK frame if the lease in the slot is held at the given
+	 * time, and an UNLOCK frame if not.
+	 */
+	private static ByteBuffer reservation(ByteBuffer buffer, int cell,
+			long slot, long now) {
+		
+		int player = CellReservations.getOwner(slot);
+		int version = CellReservations.getVersion(slot);
+		
+		buffer.clear();
+		if (CellReservations.isHeld(slot, now)) {
+			MultiplayerProtocol.writeLock(buffer, cell, player, version);
+		} else {
+			MultiplayerProtocol.writeUnlock(buffer, cell, player, version);
+		}
+		buffer.flip();
+		
+		return buffer;
+	}
+	
+	private void broadcast(ByteBuffer frame) {
+		for (Member member : members) {
+			member.send(frame);
+		}
+	}
+}
@@ -0,0 +1,166 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Vegard Løkken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package no.vtek.sudoku;
+
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The open rooms of a multiplayer server, whatever way it serves its
+ * connections. Games for new rooms are prepared in the background, and
+ * are made on a few threads of their own, so that a server with a thread
+ * for each player doesn't get a solver for each player as well.
+ * 
+ * @author Vegard Løkken
+ * @version 0.25
+ */
+class GameRooms {
+	private final ConcurrentMap<Integer, GameRoom> rooms =
+			new ConcurrentHashMap<Integer, GameRoom>();
+	private final PuzzlePool pool = new PuzzlePool(null, SudokuFactory.EASY,
+			SudokuFactory.MEDIUM, SudokuFactory.HARD);
+	private final ExecutorService creator = Executors.newFixedThreadPool(
+			Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "GameRooms");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+	
+	/**
+	 * Lets a player into a room, opening it with a new game if it isn't
+	 * open. The game for a new room is made in the background, and the
+	 * player joins once it is ready, so the calling thread never waits for
+	 * a solver. A player that can't join then is closed.
+	 * 
+	 * @param member The player
+	 * @param id The room number
+	 * @param difficulty Difficulty of a new game
+	 * @throws IOException If the difficulty is unknown or the room is full
+	 */
+	void join(final GameRoom.Member member, final int id,
+			final int difficulty) throws IOException {
+		
+		if (difficulty != SudokuFactory.EASY
+				&& difficulty != SudokuFactory.MEDIUM
+				&& difficulty != SudokuFactory.HARD) {
+			throw new ProtocolException("Bad difficulty " + difficulty);
+		}
+		
+		GameRoom room = rooms.get(id);
+		if (room != null && room.isOpen()) {
+			if (room.join(member)) return;
+			if (room.isOpen()) throw new IOException("Room is full");
+		}
+		
+		creator.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					if (!open(member, id, difficulty)) member.close();
+				} catch (RuntimeException e) {
+					member.close();
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Lets a player out of a room, and forgets the room if it is empty.
+	 * 
+	 * @param member The player
+	 * @param room The room
+	 */
+	void leave(GameRoom.Member member, GameRoom room) {
+		if (room.leave(member)) rooms.remove(room.getId(), room);
+	}
+	
+	/**
+	 * Clears the cell locks that have run out in all rooms.
+	 * 
+	 * @param buffer Buffer of the calling thread to build frames in
+	 */
+	void expire(ByteBuffer buffer) {
+		for (GameRoom room : rooms.values()) room.expire(buffer);
+	}
+	
+	int size() {
+		return rooms.size();
+	}
+	
+	/**
+	 * Called when a room has been opened, before anyone has joined it.
+	 * 
+	 * @param room The room
+	 */
+	protected void opened(GameRoom room) {
+	}
+	
+	/* Creator threads only */
+	private boolean open(GameRoom.Member member, int id, int difficulty) {
+		
+		// The room may close between finding and joining it
+		while (!member.hasLeft()) {
+			GameRoom room = rooms.get(id);
+			
+			if (room == null || !room.isOpen()) {
+				if (room != null) rooms.remove(id, room);
+				
+				GameRoom created = create(id, difficulty);
+				room = rooms.putIfAbsent(id, created);
+				if (room == null) {
+					room = created;
+					opened(room);
+				}
+			}
+			
+			if (room.join(member)) return true;
+			
+			// Nobody would ever leave a room nobody got into
+			if (room.closeIfEmpty()) {
+				rooms.remove(id, room);
+			} else {
+				return false;
+			}
+		}
+		
+		return false;
+	}
+	
+	private GameRoom create(int id, int difficulty) {
+		int[][] game = pool.poll(difficulty);
+		if (game == null) game = SudokuFactory.createGame(difficulty);
+		
+		return new GameRoom(id, game, SudokuFactory.finishGame(game));
+	}
+}
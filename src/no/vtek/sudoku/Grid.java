@@ -0,0 +1,273 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Vegard Løkken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package no.vtek.sudoku;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Compact sudoku board used by the generator and solver.
+ * 
+ * Cells are stored in a flat array indexed row by row (0-80). Each row,
+ * column and box keeps a 9-bit mask of the numbers already placed in it,
+ * where bit n-1 represents number n. The masks are updated on every
+ * place and clear, so looking up the free numbers of a cell is just a
+ * couple of OR/AND operations.
+ *
+ * @author Vegard Løkken
+ * @version 0.25
+ */
+public final class Grid {
+	public static final int SIZE = 9;
+	public static final int CELLS = SIZE * SIZE;
+	public static final int ALL = (1 << SIZE) - 1;
+	public static final int PACKED_SIZE = (CELLS + 1) / 2;
+	
+	private final int[] cells = new int[CELLS];
+	private final int[] rows = new int[SIZE];
+	private final int[] cols = new int[SIZE];
+	private final int[] boxes = new int[SIZE];
+	private int filled = 0;
+	private boolean valid = true;
+	
+	/**
+	 * Creates an empty grid.
+	 */
+	public Grid() {
+	}
+	
+	/**
+	 * Creates a grid from a 9 x 9 game board. Numbers that break sudoku
+	 * rules are left out and the grid is marked as not valid.
+	 * 
+	 * @param game The game board, 0 meaning empty
+	 */
+	public Grid(int[][] game) {
+		for (int i=0; i<SIZE; i++) {
+			for (int j=0; j<SIZE; j++) {
+				int num = game[i][j];
+				if (num != 0 && !place(i * SIZE + j, num)) {
+					valid = false;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Creates a copy of another grid.
+	 * 
+	 * @param other The grid to copy
+	 */
+	public Grid(Grid other) {
+		copyFrom(other);
+	}
+	
+	/**
+	 * Overwrites this grid with the contents of another one without
+	 * allocating anything.
+	 * 
+	 * @param other The grid to copy
+	 */
+	public void copyFrom(Grid other) {
+		System.arraycopy(other.cells, 0, cells, 0, CELLS);
+		System.arraycopy(other.rows, 0, rows, 0, SIZE);
+		System.arraycopy(other.cols, 0, cols, 0, SIZE);
+		System.arraycopy(other.boxes, 0, boxes, 0, SIZE);
+		filled = other.filled;
+		valid = other.valid;
+	}
+	
+	/**
+	 * Empties the grid.
+	 */
+	public void reset() {
+		for (int i=0; i<CELLS; i++) cells[i] = 0;
+		for (int i=0; i<SIZE; i++) {
+			rows[i] = 0;
+			cols[i] = 0;
+			boxes[i] = 0;
+		}
+		filled = 0;
+		valid = true;
+	}
+	
+	public int get(int cell) {
+		return cells[cell];
+	}
+	
+	public int get(int row, int col) {
+		return cells[row * SIZE + col];
+	}
+	
+	/**
+	 * Fetches the numbers that can be placed in a cell.
+	 * 
+	 * @param cell The cell index (0-80)
+	 * @return Mask where bit n-1 is set if number n is free
+	 */
+	public int candidates(int cell) {
+		return ~(rows[Topology.row(cell)] | cols[Topology.col(cell)]
+				| boxes[Topology.box(cell)]) & ALL;
+	}
+	
+	public int candidates(int row, int col) {
+		return candidates(row * SIZE + col);
+	}
+	
+	/**
+	 * Places a number in a cell, replacing whatever was there.
+	 * 
+	 * @param cell The cell index (0-80)
+	 * @param num The number (1-9)
+	 * @return False if the number breaks sudoku rules, in which case
+	 *		the grid is left untouched
+	 */
+	public boolean place(int cell, int num) {
+		int old = cells[cell];
+		if (old == num) return true;
+		if (old != 0) clear(cell);
+		
+		int bit = 1 << (num - 1);
+		int r = Topology.row(cell), c = Topology.col(cell);
+		int b = Topology.box(cell);
+		if (((rows[r] | cols[c] | boxes[b]) & bit) != 0) {
+			if (old != 0) place(cell, old);
+			return false;
+		}
+		
+		cells[cell] = num;
+		rows[r] |= bit;
+		cols[c] |= bit;
+		boxes[b] |= bit;
+		filled++;
+		return true;
+	}
+	
+	public boolean place(int row, int col, int num) {
+		return place(row * SIZE + col, num);
+	}
+	
+	/**
+	 * Empties a cell.
+	 * 
+	 * @param cell The cell index (0-80)
+	 */
+	public void clear(int cell) {
+		int num = cells[cell];
+		if (num == 0) return;
+		
+		int bit = ~(1 << (num - 1));
+		cells[cell] = 0;
+		rows[Topology.row(cell)] &= bit;
+		cols[Topology.col(cell)] &= bit;
+		boxes[Topology.box(cell)] &= bit;
+		filled--;
+	}
+	
+	public void clear(int row, int col) {
+		clear(row * SIZE + col);
+	}
+	
+	/**
+	 * @return Number of filled cells
+	 */
+	public int getFilled() {
+		return filled;
+	}
+	
+	public boolean isFull() {
+		return filled == CELLS;
+	}
+	
+	/**
+	 * @return False if the grid was created from a board that broke
+	 *		sudoku rules
+	 */
+	public boolean isValid() {
+		return valid;
+	}
+	
+	/**
+	 * Copies the grid into a new 9 x 9 game board.
+	 * 
+	 * @return The game board
+	 */
+	public int[][] toArray() {
+		int[][] game = new int[SIZE][SIZE];
+		for (int i=0; i<CELLS; i++) {
+			game[Topology.row(i)][Topology.col(i)] = cells[i];
+		}
+		return game;
+	}
+	
+	/**
+	 * Writes the cells two per byte, 41 bytes in all.
+	 * 
+	 * @param buffer The buffer to write to
+	 * @param offset Absolute position in the buffer
+	 */
+	public void writePacked(ByteBuffer buffer, int offset) {
+		for (int i=0; i<CELLS; i+=2) {
+			int low = i + 1 < CELLS ? cells[i + 1] : 0;
+			buffer.put(offset + i / 2, (byte) (cells[i] << 4 | low));
+		}
+	}
+	
+	/**
+	 * Reads cells written by writePacked, replacing the contents of
+	 * the grid.
+	 * 
+	 * @param buffer The buffer to read from
+	 * @param offset Absolute position in the buffer
+	 */
+	public void readPacked(ByteBuffer buffer, int offset) {
+		reset();
+		for (int i=0; i<CELLS; i++) {
+			int b = buffer.get(offset + i / 2);
+			int num = (i % 2 == 0 ? b >> 4 : b) & 0xF;
+			if (num > SIZE || num != 0 && !place(i, num)) valid = false;
+		}
+	}
+	
+	/**
+	 * @param mask A mask of numbers
+	 * @return The lowest number in the mask
+	 */
+	public static int firstNumber(int mask) {
+		return Integer.numberOfTrailingZeros(mask) + 1;
+	}
+	
+	public static int rowOf(int cell) {
+		return Topology.row(cell);
+	}
+	
+	public static int colOf(int cell) {
+		return Topology.col(cell);
+	}
+	
+	public static int boxOf(int cell) {
+		return Topology.box(cell);
+	}
+}
@@ -0,0 +1,397 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Vegard Løkken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package no.vtek.sudoku;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client for the {@link HighscoreServer}.
+ * 
+ * All network traffic happens on one background thread, so none of the
+ * methods here ever wait for the server. Scores are queued and sent in
+ * batches; if the server can't be reached they are kept and sent again
+ * later, waiting twice as long after each failure. Each score keeps the
+ * same id however often it is sent, so a batch that reached the server
+ * before the connection broke isn't counted twice. Scores the server
+ * turns down are dropped instead of being sent again. Leaderboard pages
+ * are cached and fetched again in the background once they are older
+ * than {@link #TTL}.
+ * 
+ * @author Vegard Løkken
+ * @version 0.25
+ */
+class HighscoreClient {
+	public static final long TTL = 30000;
+	public static final int PAGE_SIZE = 10;
+	
+	private static final int MAX_PENDING = 1000;
+	private static final long MIN_BACKOFF = 1000;
+	private static final long MAX_BACKOFF = 60000;
+	private static final int TIMEOUT = 5000;
+	
+	private final InetSocketAddress address;
+	private final ScheduledThreadPoolExecutor executor;
+	private final Random random = new Random();
+	
+	/* Guarded by this */
+	private final LinkedList<Submission> pending =
+			new LinkedList<Submission>();
+	private final Map<Integer, Page> pages = new HashMap<Integer, Page>();
+	private final Map<Integer, Integer> ranks = new HashMap<Integer, Integer>();
+	private boolean flushScheduled = false;
+	private long backoff = 0;
+	
+	/* Only used on the background thread */
+	private Socket socket = null;
+	private DataInputStream in;
+	private DataOutputStream out;
+	
+	private static class Submission {
+		final long id;
+		final HighscoreItem item;
+		
+		Submission(long id, HighscoreItem item) {
+			this.id = id;
+			this.item = item;
+		}
+	}
+	
+	private static class Page {
+		final List<HighscoreItem> items;
+		final long fetched;
+		boolean refreshing = false;
+		
+		Page(List<HighscoreItem> items, long fetched) {
+			this.items = items;
+			this.fetched = fetched;
+		}
+	}
+	
+	public HighscoreClient(String host, int port) {
+		address = new InetSocketAddress(host, port);
+		
+		executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "HighscoreClient");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		
+		// A retry waiting out its backoff is sent by shutdown instead
+		executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+	}
+	
+	/**
+	 * Creates a client from a "host:port" or "host" string.
+	 * 
+	 * @param server The server address
+	 * @return The client
+	 */
+	public static HighscoreClient forAddress(String server) {
+		int colon = server.lastIndexOf(':');
+		
+		if (colon < 0) {
+			return new HighscoreClient(server, HighscoreServer.DEFAULT_PORT);
+		}
+		
+		return new HighscoreClient(server.substring(0, colon),
+				Integer.parseInt(server.substring(colon + 1)));
+	}
+	
+	/**
+	 * Queues a score to be sent to the server. If too many scores are
+	 * waiting, the oldest ones are dropped.
+	 * 
+	 * @param item The score
+	 */
+	public synchronized void submit(HighscoreItem item) {
+		pending.addLast(new Submission(random.nextLong(), item));
+		while (pending.size() > MAX_PENDING) pending.removeFirst();
+		
+		scheduleFlush(backoff);
+	}
+	
+	/**
+	 * Gets the cached top list, and fetches it again in the background
+	 * if it is missing or older than {@link #TTL}.
+	 * 
+	 * @param difficulty The difficulty level
+	 * @return The best scores, or null if not fetched yet
+	 */
+	public synchronized List<HighscoreItem> getTop(final int difficulty) {
+		Page page = pages.get(difficulty);
+		long now = System.nanoTime() / 1000000;
+		
+		if (page == null) {
+			page = new Page(null, 0);
+			pages.put(difficulty, page);
+		}
+		
+		if ((page.items == null || now - page.fetched > TTL)
+				&& !page.refreshing) {
+			
+			page.refreshing = true;
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					refresh(difficulty);
+				}
+			});
+		}
+		
+		return page.items;
+	}
+	
+	/**
+	 * @param difficulty The difficulty level
+	 * @return Global rank of the last score sent on this level, or -1
+	 */
+	public synchronized int getRank(int difficulty) {
+		Integer rank = ranks.get(difficulty);
+		
+		return rank != null ? rank : -1;
+	}
+	
+	/**
+	 * Sends whatever is queued right away, even while waiting to retry,
+	 * then stops the background thread.
+	 * 
+	 * @param timeout Longest time to wait for it, in milliseconds
+	 * @return False if some scores weren't sent in time
+	 */
+	public boolean shutdown(long timeout) {
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				while (flush()) {
+					// Until all is sent or the server fails
+				}
+				disconnect();
+			}
+		});
+		executor.shutdown();
+		
+		boolean done = false;
+		try {
+			done = executor.awaitTermination(timeout, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		
+		synchronized (this) {
+			return done && pending.isEmpty();
+		}
+	}
+	
+	private void scheduleFlush(long delay) {
+		if (flushScheduled || executor.isShutdown()) return;
+		
+		flushScheduled = true;
+		executor.schedule(new Runnable() {
+			@Override
+			public void run() {
+				flush();
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Sends one batch.
+	 * 
+	 * @return True if it was sent and there are more waiting
+	 */
+	private boolean flush() {
+		List<Submission> batch = new ArrayList<Submission>();
+		
+		synchronized (this) {
+			flushScheduled = false;
+			while (!pending.isEmpty()
+					&& batch.size() < HighscoreServer.MAX_BATCH) {
+				batch.add(pending.removeFirst());
+			}
+		}
+		
+		if (batch.isEmpty()) return false;
+		
+		try {
+			int[] result = send(batch);
+			
+			synchronized (this) {
+				backoff = 0;
+				for (int i=0; i<batch.size(); i++) {
+					// Sending it again would only be turned down again
+					if (result[i] == HighscoreServer.REJECTED) continue;
+					
+					int difficulty = batch.get(i).item.getDifficultyLevel();
+					ranks.put(difficulty, result[i]);
+					
+					// The cached page may now be out of date
+					Page page = pages.get(difficulty);
+					if (page != null && result[i] <= PAGE_SIZE) {
+						pages.put(difficulty, new Page(page.items, 0));
+					}
+				}
+				if (!pending.isEmpty()) scheduleFlush(0);
+				return !pending.isEmpty();
+			}
+			
+		} catch (IOException e) {
+			// Not an answer, so the same ids are sent again later
+			disconnect();
+			
+			synchronized (this) {
+				for (int i=batch.size()-1; i>=0; i--) {
+					pending.addFirst(batch.get(i));
+				}
+				
+				backoff = Math.min(Math.max(backoff * 2, MIN_BACKOFF),
+						MAX_BACKOFF);
+				
+				// Spread the retries of many clients
+				scheduleFlush(backoff / 2
+						+ (long) (random.nextDouble() * backoff / 2));
+			}
+			return false;
+		}
+	}
+	
+	private void refresh(int difficulty) {
+		List<HighscoreItem> items = null;
+		
+		try {
+			items = fetchTop(difficulty);
+		} catch (IOException e) {
+			disconnect();
+		}
+		
+		synchronized (this) {
+			if (items != null) {
+				pages.put(difficulty,
+						new Page(items, System.nanoTime() / 1000000));
+			} else {
+				pages.get(difficulty).refreshing = false;
+			}
+		}
+	}
+	
+	private int[] send(List<Submission> batch) throws IOException {
+		connect();
+		
+		out.writeByte(HighscoreServer.SUBMIT);
+		out.writeInt(batch.size());
+		for (Submission submission : batch) {
+			HighscoreItem item = submission.item;
+			String name = item.getName();
+			if (name.length() > HighscoreServer.MAX_NAME) {
+				name = name.substring(0, HighscoreServer.MAX_NAME);
+			}
+			
+			out.writeLong(submission.id);
+			out.writeUTF(name);
+			out.writeInt(item.getDifficultyLevel());
+			out.writeLong(item.getTimeMillis());
+			out.writeLong(item.getDate().getTime());
+		}
+		out.flush();
+		
+		int[] result = new int[batch.size()];
+		for (int i=0; i<result.length; i++) result[i] = in.readInt();
+		
+		return result;
+	}
+	
+	private List<HighscoreItem> fetchTop(int difficulty) throws IOException {
+		connect();
+		
+		out.writeByte(HighscoreServer.TOP);
+		out.writeInt(difficulty);
+		out.writeInt(0);
+		out.writeInt(PAGE_SIZE);
+		out.flush();
+		
+		int count = in.readInt();
+		List<HighscoreItem> items = new ArrayList<HighscoreItem>(count);
+		for (int i=0; i<count; i++) {
+			String name = in.readUTF();
+			long time = in.readLong();
+			long date = in.readLong();
+			
+			items.add(new HighscoreItem(name, difficulty, time,
+					new Date(date)));
+		}
+		
+		return items;
+	}
+	
+	private void connect() throws IOException {
+		if (socket != null) return;
+		
+		Socket created = new Socket();
+		try {
+			created.connect(address, TIMEOUT);
+			created.setSoTimeout(TIMEOUT);
+			created.setTcpNoDelay(true);
+			
+			in = new DataInputStream(
+					new BufferedInputStream(created.getInputStream()));
+			out = new DataOutputStream(
+					new BufferedOutputStream(created.getOutputStream()));
+		} catch (IOException e) {
+			created.close();
+			throw e;
+		}
+		
+		socket = created;
+	}
+	
+	private void disconnect() {
+		if (socket == null) return;
+		
+		try {
+			socket.close();
+		} catch (IOException e) {
+			// Already closed
+		}
+		socket = null;
+	}
+}
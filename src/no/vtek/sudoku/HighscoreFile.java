@@ -0,0 +1,279 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Vegard Løkken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package no.vtek.sudoku;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.zip.CRC32;
+
+/**
+ * Memory mapped highscore file of fixed size records.
+ * 
+ * The header holds a magic number, the format version, the number of
+ * slots and a checksum of those, followed by a generation counter that
+ * is increased on every write. Each slot holds one score: name,
+ * difficulty level, time in milliseconds and date, ending with a
+ * checksum of the record.
+ * 
+ * A score is never written over another one. It goes into a free slot,
+ * and only once it is on disk is the slot of the score it replaces
+ * freed and the generation increased. A slot whose checksum doesn't
+ * match, for example after a crash in the middle of a write, reads as
+ * empty, so a crash loses at most the score being written, and may
+ * leave the replaced score next to the new one.
+ * 
+ * @author Vegard Løkken
+ * @version 0.25
+ */
+final class HighscoreFile {
+	private static final int MAGIC = 0x53444B48; // "SDKH"
+	private static final int VERSION = 1;
+	private static final int SLOTS = 64;
+	private static final int GENERATION = 16;
+	private static final int HEADER_SIZE = 24;
+	
+	private static final int USED = 0;
+	private static final int NAME_LENGTH = 1;
+	private static final int DIFFICULTY = 4;
+	private static final int TIME = 8;
+	private static final int DATE = 16;
+	private static final int NAME = 24;
+	private static final int MAX_NAME = 90;
+	private static final int CHECKSUM = 124;
+	private static final int RECORD_SIZE = 128;
+	
+	private final RandomAccessFile raf;
+	private final MappedByteBuffer buffer;
+	private final byte[] record = new byte[RECORD_SIZE];
+	private final ByteBuffer recordBuffer = ByteBuffer.wrap(record);
+	private final CRC32 crc = new CRC32();
+	
+	private HighscoreFile(RandomAccessFile raf, MappedByteBuffer buffer) {
+		this.raf = raf;
+		this.buffer = buffer;
+	}
+	
+	/**
+	 * Opens a highscore file, creating it if it doesn't exist.
+	 * 
+	 * @param file The file
+	 * @return The opened file
+	 * @throws IOException If the file can't be used
+	 */
+	public static HighscoreFile open(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		
+		try {
+			FileChannel channel = raf.getChannel();
+			boolean created = channel.size() == 0;
+			long size = HEADER_SIZE + (long) SLOTS * RECORD_SIZE;
+			
+			if (!created && channel.size() != size) {
+				throw new IOException("Not a highscore file");
+			}
+			
+			MappedByteBuffer buffer = channel.map(
+					FileChannel.MapMode.READ_WRITE, 0, size);
+			HighscoreFile highscoreFile = new HighscoreFile(raf, buffer);
+			
+			if (created) {
+				highscoreFile.writeHeader();
+			} else if (!highscoreFile.checkHeader()) {
+				throw new IOException("Not a highscore file");
+			}
+			
+			return highscoreFile;
+			
+		} catch (IOException e) {
+			raf.close();
+			throw e;
+		}
+	}
+	
+	/**
+	 * @return Counter increased on every write, also by other processes
+	 */
+	public long getGeneration() {
+		return buffer.getLong(GENERATION);
+	}
+	
+	/**
+	 * Reads all stored scores.
+	 * 
+	 * @return The scores, with their slots set
+	 */
+	public ArrayList<HighscoreItem> readAll() {
+		ArrayList<HighscoreItem> items = new ArrayList<HighscoreItem>();
+		
+		for (int slot=0; slot<SLOTS; slot++) {
+			HighscoreItem item = read(slot);
+			if (item != null) items.add(item);
+		}
+		
+		return items;
+	}
+	
+	/**
+	 * @return The first empty slot, or -1 if the file is full
+	 */
+	public int findFreeSlot() {
+		for (int slot=0; slot<SLOTS; slot++) {
+			if (read(slot) == null) return slot;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Stores a score in a free slot and flushes it to disk, then frees
+	 * the slot set in the item, if any, and sets the new one.
+	 * 
+	 * @param item The score
+	 * @return False if there is no free slot or the score didn't read
+	 *		back, in which case the file is left as it was
+	 */
+	public boolean write(HighscoreItem item) {
+		int slot = findFreeSlot();
+		if (slot < 0) return false;
+		
+		byte[] name;
+		try {
+			name = item.getName().getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+		int nameLength = Math.min(name.length, MAX_NAME);
+		
+		for (int i=0; i<RECORD_SIZE; i++) record[i] = 0;
+		recordBuffer.put(USED, (byte) 1);
+		recordBuffer.put(NAME_LENGTH, (byte) nameLength);
+		recordBuffer.putInt(DIFFICULTY, item.getDifficultyLevel());
+		recordBuffer.putLong(TIME, item.getTimeMillis());
+		recordBuffer.putLong(DATE, item.getDate() != null
+				? item.getDate().getTime() : 0);
+		System.arraycopy(name, 0, record, NAME, nameLength);
+		
+		crc.reset();
+		crc.update(record, 0, CHECKSUM);
+		recordBuffer.putInt(CHECKSUM, (int) crc.getValue());
+		
+		ByteBuffer target = buffer.duplicate();
+		target.position(offset(slot));
+		target.put(record);
+		buffer.force();
+		
+		if (read(slot) == null) {
+			buffer.put(offset(slot) + USED, (byte) 0);
+			return false;
+		}
+		
+		// Commit
+		if (item.slot >= 0) buffer.put(offset(item.slot) + USED, (byte) 0);
+		item.slot = slot;
+		buffer.putLong(GENERATION, getGeneration() + 1);
+		buffer.force();
+		
+		return true;
+	}
+	
+	/**
+	 * Empties a slot and flushes it to disk.
+	 * 
+	 * @param slot The slot
+	 */
+	public void free(int slot) {
+		buffer.put(offset(slot) + USED, (byte) 0);
+		buffer.putLong(GENERATION, getGeneration() + 1);
+		buffer.force();
+	}
+	
+	public void close() throws IOException {
+		raf.close();
+	}
+	
+	/**
+	 * @return The score in a slot, or null if empty or damaged
+	 */
+	private HighscoreItem read(int slot) {
+		ByteBuffer source = buffer.duplicate();
+		source.position(offset(slot));
+		source.get(record);
+		
+		if (record[USED] != 1) return null;
+		
+		crc.reset();
+		crc.update(record, 0, CHECKSUM);
+		if (recordBuffer.getInt(CHECKSUM) != (int) crc.getValue()) {
+			return null;
+		}
+		
+		int nameLength = Math.min(record[NAME_LENGTH] & 0xFF, MAX_NAME);
+		String name;
+		try {
+			name = new String(record, NAME, nameLength, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+		
+		long date = recordBuffer.getLong(DATE);
+		HighscoreItem item = new HighscoreItem(name,
+				recordBuffer.getInt(DIFFICULTY), recordBuffer.getLong(TIME),
+				date != 0 ? new Date(date) : null);
+		item.slot = slot;
+		
+		return item;
+	}
+	
+	private void writeHeader() {
+		buffer.putInt(0, MAGIC);
+		buffer.putInt(4, VERSION);
+		buffer.putInt(8, SLOTS);
+		buffer.putInt(12, headerChecksum());
+		buffer.putLong(GENERATION, 0);
+		buffer.force();
+	}
+	
+	private boolean checkHeader() {
+		return buffer.getInt(0) == MAGIC && buffer.getInt(4) == VERSION
+				&& buffer.getInt(8) == SLOTS
+				&& buffer.getInt(12) == headerChecksum();
+	}
+	
+	private int headerChecksum() {
+		crc.reset();
+		for (int i=0; i<12; i++) crc.update(buffer.get(i));
+		return (int) crc.getValue();
+	}
+	
+	private static int offset(int slot) {
+		return HEADER_SIZE + slot * RECORD_SIZE;
+	}
+}
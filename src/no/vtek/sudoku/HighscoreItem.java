@@ -34,15 +34,30 @@ import java.util.Date;
  * @version 0.25
  */
 class HighscoreItem implements Serializable {
+	
+	/* Same as computed for the original class, so that old highscore
+	 * files can still be read for migration */
+	private static final long serialVersionUID = -1322823977233486977L;
+	
 	private String name;
 	private int difficultyLevel;
 	private int time;
+	private long timeMillis;
 	private Date date;
+	
+	/* Position in the highscore file, -1 if not stored */
+	transient int slot = -1;
 
 	public HighscoreItem(String name, int difficultyLevel, int time, Date date) {
+		this(name, difficultyLevel, time * 1000L, date);
+	}
+
+	public HighscoreItem(String name, int difficultyLevel, long timeMillis,
+			Date date) {
 		this.name = name;
 		this.difficultyLevel = difficultyLevel;
-		this.time = time;
+		this.time = (int) (timeMillis / 1000);
+		this.timeMillis = timeMillis;
 		this.date = date;
 	}
 
@@ -70,12 +85,25 @@ class HighscoreItem implements Serializable {
 		this.name = name;
 	}
 
+	/**
+	 * @return The time in seconds
+	 */
 	public int getTime() {
 		return time;
 	}
 
 	public void setTime(int time) {
 		this.time = time;
+		this.timeMillis = time * 1000L;
+	}
+
+	/**
+	 * @return The time in milliseconds
+	 */
+	public long getTimeMillis() {
+		
+		// Items from old files only have whole seconds
+		return timeMillis > 0 ? timeMillis : time * 1000L;
 	}
 	
 }
@@ -0,0 +1,372 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Vegard Løkken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package no.vtek.sudoku;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Small server for the global highscore list.
+ * 
+ * The scores are kept in memory in one {@link RankedIndex} per difficulty
+ * level. Each connection is served by its own thread and may send any
+ * number of requests, each answered before the next is read:
+ * 
+ * <pre>
+ * SUBMIT  int count, count * (long id, UTF name, int difficulty, long time,
+ *         long date) -&gt; count * int rank
+ * TOP     int difficulty, int offset, int count
+ *         -&gt; int n, n * (UTF name, long time, long date)
+ * RANK    int difficulty, long time
+ *         -&gt; int rank, int total
+ * </pre>
+ * 
+ * Times are in milliseconds and dates in milliseconds since the epoch.
+ * A request that breaks the limits below closes the connection.
+ * 
+ * Each score is submitted with an id chosen by the client, and a score
+ * sent again with an id the server has seen lately is answered with the
+ * rank it got the first time instead of being added twice. A score with
+ * an unknown difficulty, a long name or no time is rejected with rank
+ * {@link #REJECTED}, and the rest of the batch is still added.
+ * 
+ * Run it on its own with <code>java -cp Sudoku.jar
+ * no.vtek.sudoku.HighscoreServer [port]</code>, or embed it with
+ * {@link #start()}.
+ * 
+ * @author Vegard Løkken
+ * @version 0.25
+ */
+public class HighscoreServer implements Runnable {
+	public static final int DEFAULT_PORT = 9450;
+	
+	static final byte SUBMIT = 1;
+	static final byte TOP = 2;
+	static final byte RANK = 3;
+	
+	static final int MAX_BATCH = 256;
+	static final int MAX_PAGE = 100;
+	static final int MAX_NAME = 30;
+	static final int MAX_SUBMITTED = 65536;
+	static final int REJECTED = 0;
+	
+	private final ServerSocket serverSocket;
+	private final ExecutorService executor;
+	private final ConcurrentMap<Integer, RankedIndex> indexes =
+			new ConcurrentHashMap<Integer, RankedIndex>();
+	
+	/* Ranks of the last submitted ids, guarded by itself */
+	private final Map<Long, Integer> submitted =
+			new LinkedHashMap<Long, Integer>() {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Long, Integer> eldest) {
+			return size() > MAX_SUBMITTED;
+		}
+	};
+	
+	/**
+	 * Binds the server to a port on this machine.
+	 * 
+	 * @param port The port, or 0 for any free port
+	 * @throws IOException If the port can't be bound
+	 */
+	public HighscoreServer(int port) throws IOException {
+		this(port, null);
+	}
+	
+	/**
+	 * Binds the server to a port.
+	 * 
+	 * @param port The port, or 0 for any free port
+	 * @param address The address to listen on, or null for localhost
+	 * @throws IOException If the port can't be bound
+	 */
+	public HighscoreServer(int port, InetAddress address) throws IOException {
+		this(port, address, Executors.newCachedThreadPool(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "HighscoreServer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		}));
+	}
+	
+	/**
+	 * Binds the server to a port.
+	 * 
+	 * @param port The port, or 0 for any free port
+	 * @param address The address to listen on, or null for localhost
+	 * @param executor Runs each connection as one task
+	 * @throws IOException If the port can't be bound
+	 */
+	public HighscoreServer(int port, InetAddress address,
+			ExecutorService executor) throws IOException {
+		
+		serverSocket = new ServerSocket(port, 50, address != null
+				? address : InetAddress.getByName(null));
+		this.executor = executor;
+	}
+	
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+	
+	/**
+	 * Accepts connections on a background thread.
+	 */
+	public void start() {
+		Thread thread = new Thread(this, "HighscoreServer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	/**
+	 * Accepts connections until the server is stopped.
+	 */
+	@Override
+	public void run() {
+		while (!serverSocket.isClosed()) {
+			try {
+				final Socket socket = serverSocket.accept();
+				
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						serve(socket);
+					}
+				});
+				
+			} catch (IOException e) {
+				if (!serverSocket.isClosed()) {
+					System.err.println("Error while accepting connection");
+				}
+			}
+		}
+	}
+	
+	public void stop() {
+		try {
+			serverSocket.close();
+		} catch (IOException e) {
+			// Closing anyway
+		}
+		executor.shutdownNow();
+	}
+	
+	/**
+	 * Submits a score directly, without going through a connection.
+	 * 
+	 * @param item The score
+	 * @return Its rank, starting at 1
+	 */
+	int submit(HighscoreItem item) {
+		return index(item.getDifficultyLevel()).add(item);
+	}
+	
+	/**
+	 * Submits a score once, however many times its id is sent.
+	 * 
+	 * @param id The id the client gave the score
+	 * @param item The score
+	 * @return Its rank when it was first submitted, starting at 1
+	 */
+	int submit(long id, HighscoreItem item) {
+		synchronized (submitted) {
+			Integer rank = submitted.get(id);
+			
+			if (rank == null) {
+				rank = submit(item);
+				submitted.put(id, rank);
+			}
+			
+			return rank;
+		}
+	}
+	
+	List<HighscoreItem> getTop(int difficulty, int offset, int count) {
+		return index(difficulty).get(offset, count);
+	}
+	
+	int getRank(int difficulty, long time) {
+		return index(difficulty).rank(time);
+	}
+	
+	private RankedIndex index(int difficulty) {
+		RankedIndex index = indexes.get(difficulty);
+		
+		if (index == null) {
+			RankedIndex created = new RankedIndex();
+			index = indexes.putIfAbsent(difficulty, created);
+			if (index == null) index = created;
+		}
+		
+		return index;
+	}
+	
+	private void serve(Socket socket) {
+		try {
+			socket.setTcpNoDelay(true);
+			
+			DataInputStream in = new DataInputStream(
+					new BufferedInputStream(socket.getInputStream()));
+			DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(socket.getOutputStream()));
+			
+			while (true) {
+				int request = in.read();
+				if (request < 0) break;
+				
+				switch (request) {
+					case SUBMIT:
+						submit(in, out);
+						break;
+					case TOP:
+						top(in, out);
+						break;
+					case RANK:
+						rank(in, out);
+						break;
+					default:
+						throw new IOException("Unknown request " + request);
+				}
+				
+				out.flush();
+			}
+			
+		} catch (EOFException e) {
+			// Client went away in the middle of a request
+		} catch (IOException e) {
+			System.err.println("Highscore connection closed: "
+					+ e.getMessage());
+		} finally {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// Already closed
+			}
+		}
+	}
+	
+	private void submit(DataInputStream in, DataOutputStream out)
+			throws IOException {
+		
+		int count = in.readInt();
+		if (count < 0 || count > MAX_BATCH) {
+			throw new IOException("Bad batch size " + count);
+		}
+		
+		// Read the whole batch before adding any of it
+		long[] ids = new long[count];
+		HighscoreItem[] items = new HighscoreItem[count];
+		for (int i=0; i<count; i++) {
+			ids[i] = in.readLong();
+			String name = in.readUTF();
+			int difficulty = in.readInt();
+			long time = in.readLong();
+			long date = in.readLong();
+			
+			if (isLevel(difficulty) && name.length() <= MAX_NAME && time > 0) {
+				items[i] = new HighscoreItem(name, difficulty, time,
+						new Date(date));
+			}
+		}
+		
+		for (int i=0; i<count; i++) {
+			out.writeInt(items[i] != null ? submit(ids[i], items[i])
+					: REJECTED);
+		}
+	}
+	
+	private void top(DataInputStream in, DataOutputStream out)
+			throws IOException {
+		
+		int difficulty = in.readInt();
+		int offset = in.readInt();
+		int count = in.readInt();
+		
+		if (!isLevel(difficulty)) {
+			throw new IOException("Bad difficulty " + difficulty);
+		}
+		if (offset < 0 || count < 0 || count > MAX_PAGE) {
+			throw new IOException("Bad page");
+		}
+		
+		List<HighscoreItem> items = getTop(difficulty, offset, count);
+		
+		out.writeInt(items.size());
+		for (HighscoreItem item : items) {
+			out.writeUTF(item.getName());
+			out.writeLong(item.getTimeMillis());
+			out.writeLong(item.getDate().getTime());
+		}
+	}
+	
+	private void rank(DataInputStream in, DataOutputStream out)
+			throws IOException {
+		
+		int difficulty = in.readInt();
+		long time = in.readLong();
+		
+		if (!isLevel(difficulty)) {
+			throw new IOException("Bad difficulty " + difficulty);
+		}
+		
+		RankedIndex index = index(difficulty);
+		out.writeInt(index.rank(time));
+		out.writeInt(index.size());
+	}
+	
+	private static boolean isLevel(int difficulty) {
+		return difficulty == SudokuFactory.EASY
+				|| difficulty == SudokuFactory.MEDIUM
+				|| difficulty == SudokuFactory.HARD;
+	}
+	
+	public static void main(String[] args) throws IOException {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+		
+		HighscoreServer server = new HighscoreServer(port);
+		System.err.println("Highscore server listening on port "
+				+ server.getPort());
+		server.run();
+	}
+}
@@ -24,15 +24,23 @@
 
 package no.vtek.sudoku;
 
+import java.awt.BorderLayout;
 import java.awt.Dimension;
+import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import javax.swing.JDialog;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTabbedPane;
 import javax.swing.JTable;
@@ -41,98 +49,256 @@ import javax.swing.table.AbstractTableModel;
 /**
  * Highscore service to make the game more competative
  * 
+ * The scores are kept in memory as one list per difficulty level, sorted
+ * with the best time first, and stored in a {@link HighscoreFile}. A new
+ * score only writes its own slot, and the lists are only read again if
+ * another process has written to the file. A score that is still in the
+ * file after a crash in the middle of being replaced falls off its list
+ * when the file is read.
+ * 
+ * If the system property <code>sudoku.highscore.server</code> is set to
+ * "host:port" of a {@link HighscoreServer}, new scores are also sent
+ * there, and its top list is shown in the highscore table.
+ * 
  * @author Vegard Løkken
  * @version 0.25
  */
 public class HighscoreService {
-	private static ArrayList<HighscoreItem> highscoreList = null;
-	private static final String FILENAME = "Highscores.dat";
+	private static Map<Integer, ArrayList<HighscoreItem>> highscores = null;
+	private static final String FILENAME = "Highscores.bin";
+	private static final String OLD_FILENAME = "Highscores.dat";
+	private static final int SLOTS = 10;
+	private static HighscoreFile file = null;
+	private static long loadedGeneration = -1;
+	private static final HighscoreClient client = createClient();
+	
+	/** Longest time to wait for the server when the game exits */
+	private static final long SHUTDOWN_TIMEOUT = 3000;
+	
+	private static final Comparator<HighscoreItem> BY_TIME =
+			new Comparator<HighscoreItem>() {
+		@Override
+		public int compare(HighscoreItem a, HighscoreItem b) {
+			return a.getTimeMillis() < b.getTimeMillis() ? -1
+					: a.getTimeMillis() > b.getTimeMillis() ? 1 : 0;
+		}
+	};
 	
-	public static HighscoreItem getWorst(int difficultyLevel) {
-		loadHighscoreList();
+	public static synchronized HighscoreItem getWorst(int difficultyLevel) {
+		ArrayList<HighscoreItem> list = getList(difficultyLevel);
 		
-		HighscoreItem worst = null;
-		for (HighscoreItem item : highscoreList) {
-			if (item.getDifficultyLevel() == difficultyLevel) {
-				if (worst != null) {
-					if (item.getTime() > worst.getTime()) worst = item;
-				} else {
-					worst = item;
-				}
-			}
+		return list.isEmpty() ? null : list.get(list.size() - 1);
+	}
+	
+	public static synchronized boolean hasFreeSlots(int difficultyLevel) {
+		return getList(difficultyLevel).size() < SLOTS;
+	}
+	
+	/**
+	 * Checks if a time is good enough for the highscore list.
+	 * 
+	 * @param difficultyLevel The difficulty level
+	 * @param time The time in milliseconds
+	 * @return True if it would make the list
+	 */
+	public static synchronized boolean qualifies(int difficultyLevel,
+			long time) {
+		
+		return hasFreeSlots(difficultyLevel)
+				|| time < getWorst(difficultyLevel).getTimeMillis();
+	}
+	
+	/**
+	 * Adds a score if it qualifies.
+	 * 
+	 * @param name The player name
+	 * @param difficultyLevel The difficulty level
+	 * @param time The time in milliseconds
+	 */
+	public static synchronized void addScore(String name,
+			int difficultyLevel, long time) {
+		
+		if (!qualifies(difficultyLevel, time)) return;
+		
+		ArrayList<HighscoreItem> list = getList(difficultyLevel);
+		HighscoreItem item = new HighscoreItem(
+				name, difficultyLevel, time, new Date());
+		
+		// A full list gives up the slot of its worst score
+		if (list.size() >= SLOTS) {
+			item.slot = list.remove(list.size() - 1).slot;
 		}
 		
-		return worst;
+		// Insert after any equal times, so older scores stay ahead
+		int index = list.size();
+		while (index > 0 && list.get(index - 1).getTimeMillis() > time) {
+			index--;
+		}
+		list.add(index, item);
+		
+		saveScore(item);
+		
+		if (client != null) client.submit(item);
 	}
 	
-	public static boolean hasFreeSlots(int difficultyLevel) {
-		loadHighscoreList();
+	public static synchronized void showHighscoreTable(SudokuGame frame,
+			int difficulty) {
 		
-		int num = 0;
-		for (HighscoreItem item : highscoreList) {
-			if (item.getDifficultyLevel() == difficultyLevel) {
-				num++;
-			}
+		loadIfChanged();
+		
+		ArrayList<HighscoreItem> all = new ArrayList<HighscoreItem>();
+		for (ArrayList<HighscoreItem> list : highscores.values()) {
+			all.addAll(list);
+		}
+		
+		if (client != null) {
+			new HighscoreTable(frame, all, difficulty,
+					client.getTop(difficulty), client.getRank(difficulty));
+		} else {
+			new HighscoreTable(frame, all, difficulty, null, -1);
+		}
+	}
+	
+	/**
+	 * Sends the scores still waiting for the server, giving up after a
+	 * few seconds. Call this before the game exits.
+	 */
+	public static void shutdown() {
+		if (client != null && !client.shutdown(SHUTDOWN_TIMEOUT)) {
+			System.err.println("Error while sending highscores to server");
 		}
+	}
+	
+	private static HighscoreClient createClient() {
+		String server = System.getProperty("sudoku.highscore.server");
+		if (server == null || server.length() == 0) return null;
+		
+		HighscoreClient created = HighscoreClient.forAddress(server);
 		
-		return num < 10;
+		// Have the lists ready by the time they are shown
+		created.getTop(SudokuFactory.EASY);
+		created.getTop(SudokuFactory.MEDIUM);
+		created.getTop(SudokuFactory.HARD);
+		
+		return created;
 	}
 	
-	public static void addScore(String name, int difficultyLevel, int time) {
-		loadHighscoreList();
+	private static ArrayList<HighscoreItem> getList(int difficultyLevel) {
+		loadIfChanged();
 		
-		boolean ok = true;
-		if (!hasFreeSlots(difficultyLevel)) {
-			ok = false;
-			
-			HighscoreItem worst = getWorst(difficultyLevel);
-			if (time > worst.getTime()) {
-				highscoreList.remove(worst);
-				ok = true;
-			}
+		return listFor(difficultyLevel);
+	}
+	
+	private static ArrayList<HighscoreItem> listFor(int difficultyLevel) {
+		ArrayList<HighscoreItem> list = highscores.get(difficultyLevel);
+		if (list == null) {
+			list = new ArrayList<HighscoreItem>();
+			highscores.put(difficultyLevel, list);
 		}
 		
-		if (ok) {
-			highscoreList.add(new HighscoreItem(
-					name, difficultyLevel, time, new Date()));
-			saveHighscoreList();
+		return list;
+	}
+	
+	/**
+	 * Reads the lists unless the copy in memory is up to date with the
+	 * file on disk.
+	 */
+	private static void loadIfChanged() {
+		if (file == null) openFile();
+		
+		long generation = file != null ? file.getGeneration() : 0;
+		
+		if (highscores == null || generation != loadedGeneration) {
+			loadHighscoreList();
+			loadedGeneration = generation;
 		}
 	}
 	
-	public static void showHighscoreTable(SudokuGame frame, int difficulty) {
-		loadHighscoreList();
+	/**
+	 * Opens the highscore file, moving the scores over from the old file
+	 * format the first time.
+	 */
+	private static void openFile() {
+		File current = new File(FILENAME);
+		boolean migrate = !current.exists();
+		
+		try {
+			file = HighscoreFile.open(current);
+		} catch (IOException e) {
+			System.err.println("Error while opening highscore list");
+			return;
+		}
 		
-		new HighscoreTable(frame, highscoreList, difficulty);
+		if (migrate && new File(OLD_FILENAME).exists()) {
+			migrateHighscoreList();
+		}
 	}
 	
 	private static void loadHighscoreList() {
+		highscores = new HashMap<Integer, ArrayList<HighscoreItem>>();
+		
+		if (file != null) {
+			for (HighscoreItem item : file.readAll()) {
+				listFor(item.getDifficultyLevel()).add(item);
+			}
+		}
+		
+		for (ArrayList<HighscoreItem> list : highscores.values()) {
+			Collections.sort(list, BY_TIME);
+			
+			while (list.size() > SLOTS) {
+				file.free(list.remove(list.size() - 1).slot);
+			}
+		}
+	}
+	
+	/**
+	 * Copies the best scores of each level from the old serialized list.
+	 * The old file is left as it is.
+	 */
+	private static void migrateHighscoreList() {
 		Object obj = null;
+		
 		try {
-			FileInputStream fis = new FileInputStream(FILENAME);
+			FileInputStream fis = new FileInputStream(OLD_FILENAME);
 			ObjectInputStream ois = new ObjectInputStream(fis);
-			
+
 			obj = ois.readObject();
 			ois.close();
-			
+
 		} catch (Exception e) {
-			System.err.println("Error while reading highscore list");
+			System.err.println("Error while reading old highscore list");
+			return;
 		}
 		
-		if (obj != null) {
-			highscoreList = (ArrayList<HighscoreItem>)obj;
-		} else {
-			highscoreList = new ArrayList<HighscoreItem>();
+		highscores = new HashMap<Integer, ArrayList<HighscoreItem>>();
+		
+		for (HighscoreItem item : (ArrayList<HighscoreItem>) obj) {
+			listFor(item.getDifficultyLevel()).add(item);
+		}
+		
+		for (ArrayList<HighscoreItem> list : highscores.values()) {
+			Collections.sort(list, BY_TIME);
+			
+			for (int i=0; i<list.size() && i<SLOTS; i++) {
+				list.get(i).slot = -1;
+				file.write(list.get(i));
+			}
 		}
+		
+		highscores = null;
 	}
 	
-	private static void saveHighscoreList() {
-		try {
-			FileOutputStream fos = new FileOutputStream(FILENAME);
-			ObjectOutputStream oos = new ObjectOutputStream(fos);
-			oos.writeObject(highscoreList);
-		} catch (Exception e) {
+	private static void saveScore(HighscoreItem item) {
+		if (file == null) return;
+		
+		if (!file.write(item)) {
 			System.err.println("Error while saving highscore list");
+			return;
 		}
+		
+		// Our own write doesn't need to be read back
+		loadedGeneration = file.getGeneration();
 	}
 }
 
@@ -140,7 +306,8 @@ class HighscoreTable extends JDialog {
 	
 
 	public HighscoreTable(SudokuGame frame,
-			ArrayList<HighscoreItem> highscoreList, int difficulty) {
+			ArrayList<HighscoreItem> highscoreList, int difficulty,
+			List<HighscoreItem> globalList, int globalRank) {
 		super(frame, true);
 
 		JTabbedPane tabbedPane = new JTabbedPane();
@@ -204,6 +371,29 @@ class HighscoreTable extends JDialog {
 		scrollPane = new JScrollPane(table);
 		tabbedPane.add("Hard", scrollPane);
 		
+		// Global highscores for the current level
+		if (globalList != null) {
+			tableItems = new ArrayList<HighscoreItem>(globalList);
+			
+			// Fill blanks
+			for (int i=tableItems.size()-1; i<10; i++) {
+				tableItems.add(new HighscoreItem("", 0, 0, null));
+			}
+
+			table = new JTable(new HighscoreTableModel(tableItems));
+			table.setPreferredScrollableViewportSize(new Dimension(400, 200));
+			scrollPane = new JScrollPane(table);
+			
+			// Where our last score on this level ended up
+			JPanel panel = new JPanel(new BorderLayout());
+			panel.add(scrollPane, BorderLayout.CENTER);
+			if (globalRank > 0) {
+				panel.add(new JLabel("Your last score is number " + globalRank),
+						BorderLayout.SOUTH);
+			}
+			tabbedPane.add("Global", panel);
+		}
+		
 		switch (difficulty) {
 			case SudokuFactory.EASY:
 				tabbedPane.setSelectedIndex(0);
@@ -0,0 +1,192 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Vegard Løkken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package no.vtek.sudoku;
+
+/**
+ * Finds the next number a player can fill in by logic alone.
+ * 
+ * The engine follows the board as it is played. For every row, column
+ * and box it counts how many times each number is used, so a change
+ * only updates the candidates of the cell and its 20 peers. Finding a
+ * hint copies those candidates into a {@link LogicSolver} and steps it
+ * until a number is placed, which takes a few microseconds.
+ * 
+ * An instance is not thread safe.
+ * 
+ * @author Vegard Løkken
+ * @version 0.25
+ */
+final class HintEngine {
+	
+	private final int[] values = new int[Grid.CELLS];
+	private final int[] candidates = new int[Grid.CELLS];
+	private final int[][] unitCounts = new int[Topology.UNITS][10];
+	private final int[] unitMasks = new int[Topology.UNITS];
+	private final LogicSolver solver = new LogicSolver();
+	private int conflicts = 0;
+	
+	/**
+	 * @param game The board to follow, 0 meaning empty
+	 */
+	HintEngine(int[][] game) {
+		for (int cell=0; cell<Grid.CELLS; cell++) {
+			int num = game[Topology.row(cell)][Topology.col(cell)];
+			values[cell] = num;
+			count(cell, num, 1);
+		}
+		for (int cell=0; cell<Grid.CELLS; cell++) {
+			updateCandidates(cell);
+		}
+	}
+	
+	/**
+	 * Follows a change on the board.
+	 * 
+	 * @param cell The cell (0-80)
+	 * @param num The new number, 0 for empty
+	 */
+	void set(int cell, int num) {
+		if (values[cell] == num) return;
+		
+		count(cell, values[cell], -1);
+		values[cell] = num;
+		count(cell, num, 1);
+		
+		updateCandidates(cell);
+		for (int n=0; n<Topology.PEERS; n++) {
+			updateCandidates(Topology.peer(cell, n));
+		}
+	}
+	
+	/**
+	 * @param cell The cell (0-80)
+	 * @return Mask of the numbers found in the cell or its peers
+	 */
+	int getUsed(int cell) {
+		return unitMasks[Topology.unit(cell, 0)]
+				| unitMasks[Topology.unit(cell, 1)]
+				| unitMasks[Topology.unit(cell, 2)];
+	}
+	
+	/**
+	 * Finds the next number that can be filled in.
+	 * 
+	 * @return The hint, or null if the board breaks sudoku rules, can't
+	 *		be solved from here or needs more than the known techniques
+	 */
+	Hint next() {
+		if (conflicts > 0) return null;
+		
+		solver.load(values, candidates);
+		Technique hardest = null;
+		long supportLow = 0, supportHigh = 0;
+		
+		while (solver.step()) {
+			if (hardest == null
+					|| solver.getTechnique().compareTo(hardest) > 0) {
+				hardest = solver.getTechnique();
+			}
+			
+			for (int cell=0; cell<Grid.CELLS; cell++) {
+				if (!solver.isSupporting(cell)) continue;
+				if (cell < 64) {
+					supportLow |= 1L << cell;
+				} else {
+					supportHigh |= 1L << (cell - 64);
+				}
+			}
+			
+			if (solver.getCell() >= 0) {
+				return new Hint(solver.getCell(), solver.getNumber(), hardest,
+						supportLow, supportHigh);
+			}
+		}
+		return null;
+	}
+	
+	private void count(int cell, int num, int delta) {
+		if (num == 0) return;
+		
+		for (int n=0; n<3; n++) {
+			int unit = Topology.unit(cell, n);
+			int before = unitCounts[unit][num];
+			unitCounts[unit][num] = before + delta;
+			
+			if (delta > 0 && before > 0) conflicts++;
+			if (delta < 0 && before > 1) conflicts--;
+			
+			if (before + delta == 0) {
+				unitMasks[unit] &= ~(1 << (num - 1));
+			} else {
+				unitMasks[unit] |= 1 << (num - 1);
+			}
+		}
+	}
+	
+	private void updateCandidates(int cell) {
+		candidates[cell] = values[cell] != 0 ? 0 : ~getUsed(cell) & Grid.ALL;
+	}
+	
+	/**
+	 * A number that can be filled in, the hardest technique needed to
+	 * find it and the cells that show why.
+	 */
+	static final class Hint {
+		private final int cell;
+		private final int number;
+		private final Technique technique;
+		private final long supportLow, supportHigh;
+		
+		private Hint(int cell, int number, Technique technique,
+				long supportLow, long supportHigh) {
+			this.cell = cell;
+			this.number = number;
+			this.technique = technique;
+			this.supportLow = supportLow;
+			this.supportHigh = supportHigh;
+		}
+		
+		int getCell() {
+			return cell;
+		}
+		
+		int getNumber() {
+			return number;
+		}
+		
+		Technique getTechnique() {
+			return technique;
+		}
+		
+		/**
+		 * @param cell The cell (0-80)
+		 * @return True if the hint is based on the cell
+		 */
+		boolean isSupporting(int cell) {
+			return cell < 64 ? (supportLow >>> cell & 1) != 0
+					: (supportHigh >>> (cell - 64) & 1) != 0;
+		}
+	}
+}
@@ -0,0 +1,562 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Vegard Løkken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package no.vtek.sudoku;
+
+/**
+ * Solves puzzles step by step the way a person would, using the
+ * techniques in {@link Technique} and always picking the easiest one
+ * that makes progress. Keeps a mask of candidates for every cell, and
+ * remembers which cells each step was based on.
+ * 
+ * All state lives in preallocated arrays, so an instance can be reused
+ * for any number of puzzles without allocating. An instance is not
+ * thread safe.
+ * 
+ * @author Vegard Løkken
+ * @version 0.25
+ */
+final class LogicSolver {
+	private static final int UNITS = Topology.UNITS;
+	
+	private final int[] values = new int[Grid.CELLS];
+	private final int[] candidates = new int[Grid.CELLS];
+	private final int[] buffer = new int[Grid.SIZE];
+	private final int[] positions = new int[Grid.SIZE];
+	private int empty;
+	private boolean broken;
+	
+	private Technique technique;
+	private int cell;
+	private int number;
+	
+	/* Cells the last step was based on, one bit per cell */
+	private long supportLow, supportHigh;
+	
+	/**
+	 * Starts solving a new puzzle.
+	 * 
+	 * @param puzzle The puzzle, left untouched
+	 */
+	public void load(Grid puzzle) {
+		empty = 0;
+		broken = !puzzle.isValid();
+		
+		for (int i=0; i<Grid.CELLS; i++) {
+			values[i] = puzzle.get(i);
+			
+			if (values[i] == 0) {
+				candidates[i] = puzzle.candidates(i);
+				empty++;
+			} else {
+				candidates[i] = 0;
+			}
+		}
+	}
+	
+	/**
+	 * Starts solving from a board whose candidates are already known.
+	 * 
+	 * @param values The numbers of the cells, 0 for empty
+	 * @param candidates The candidate masks, 0 for filled cells
+	 */
+	public void load(int[] values, int[] candidates) {
+		System.arraycopy(values, 0, this.values, 0, Grid.CELLS);
+		System.arraycopy(candidates, 0, this.candidates, 0, Grid.CELLS);
+		
+		empty = 0;
+		broken = false;
+		for (int i=0; i<Grid.CELLS; i++) {
+			if (values[i] == 0) empty++;
+		}
+	}
+	
+	/**
+	 * Makes one deduction using the easiest technique that works.
+	 * Afterwards the technique is found with getTechnique, and for
+	 * placements the cell and number with getCell and getNumber.
+	 * 
+	 * @return False if solved, stuck or the puzzle has no solution
+	 */
+	public boolean step() {
+		technique = null;
+		cell = -1;
+		number = 0;
+		supportLow = 0;
+		supportHigh = 0;
+		
+		if (empty == 0 || broken) return false;
+		
+		if (nakedSingle()) {
+			technique = Technique.NAKED_SINGLE;
+		} else if (!broken && hiddenSingle()) {
+			technique = Technique.HIDDEN_SINGLE;
+		} else if (!broken && lockedCandidates()) {
+			technique = Technique.LOCKED_CANDIDATES;
+		} else if (!broken && nakedSubset(2)) {
+			technique = Technique.NAKED_PAIR;
+		} else if (!broken && hiddenSubset(2)) {
+			technique = Technique.HIDDEN_PAIR;
+		} else if (!broken && nakedSubset(3)) {
+			technique = Technique.NAKED_TRIPLE;
+		} else if (!broken && hiddenSubset(3)) {
+			technique = Technique.HIDDEN_TRIPLE;
+		} else if (!broken && (fish(2, false) || fish(2, true))) {
+			technique = Technique.X_WING;
+		} else if (!broken && (fish(3, false) || fish(3, true))) {
+			technique = Technique.SWORDFISH;
+		}
+		
+		return technique != null;
+	}
+	
+	public boolean isSolved() {
+		return empty == 0 && !broken;
+	}
+	
+	/**
+	 * @return True if a cell ran out of candidates, meaning the puzzle
+	 *		has no solution
+	 */
+	public boolean isBroken() {
+		return broken;
+	}
+	
+	/**
+	 * @return Number of empty cells left
+	 */
+	public int getEmpty() {
+		return empty;
+	}
+	
+	/**
+	 * @return Technique used in the last step, null if none
+	 */
+	public Technique getTechnique() {
+		return technique;
+	}
+	
+	/**
+	 * @return Cell filled in the last step, -1 if it only removed
+	 *		candidates
+	 */
+	public int getCell() {
+		return cell;
+	}
+	
+	/**
+	 * @return Number filled in the last step, 0 if it only removed
+	 *		candidates
+	 */
+	public int getNumber() {
+		return number;
+	}
+	
+	/**
+	 * @param cell The cell index (0-80)
+	 * @return True if the last step was based on the cell
+	 */
+	public boolean isSupporting(int cell) {
+		return cell < 64 ? (supportLow >>> cell & 1) != 0
+				: (supportHigh >>> (cell - 64) & 1) != 0;
+	}
+	
+	private void support(int cell) {
+		if (cell < 64) {
+			supportLow |= 1L << cell;
+		} else {
+			supportHigh |= 1L << (cell - 64);
+		}
+	}
+	
+	/**
+	 * For each other number, supports a peer holding it.
+	 */
+	private void supportPeers(int cell, int others) {
+		for (int n=0; n<Topology.PEERS; n++) {
+			int peer = Topology.peer(cell, n);
+			int value = values[peer];
+			if (value != 0 && (others & 1 << (value - 1)) != 0) {
+				support(peer);
+				others &= ~(1 << (value - 1));
+			}
+		}
+	}
+	
+	public int getValue(int cell) {
+		return values[cell];
+	}
+	
+	/**
+	 * @param cell The cell index (0-80)
+	 * @return Mask of the cell's remaining candidates
+	 */
+	public int getCandidates(int cell) {
+		return candidates[cell];
+	}
+	
+	private void place(int cell, int num) {
+		values[cell] = num;
+		candidates[cell] = 0;
+		empty--;
+		
+		int clear = ~(1 << (num - 1));
+		for (int n=0; n<Topology.PEERS; n++) {
+			candidates[Topology.peer(cell, n)] &= clear;
+		}
+		
+		this.cell = cell;
+		this.number = num;
+	}
+	
+	private boolean nakedSingle() {
+		for (int i=0; i<Grid.CELLS; i++) {
+			if (values[i] == 0) {
+				int mask = candidates[i];
+				
+				if (mask == 0) {
+					broken = true;
+					return false;
+				} else if ((mask & (mask - 1)) == 0) {
+					supportPeers(i, Grid.ALL & ~mask);
+					place(i, Grid.firstNumber(mask));
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+	
+	private boolean hiddenSingle() {
+		for (int u=0; u<UNITS; u++) {
+			int once = 0, twice = 0, placed = 0;
+			
+			for (int k=0; k<Grid.SIZE; k++) {
+				int c = Topology.unitCell(u, k);
+				int mask = candidates[c];
+				twice |= once & mask;
+				once |= mask;
+				if (values[c] != 0) placed |= 1 << (values[c] - 1);
+			}
+			
+			// A number with nowhere to go
+			if ((once | placed) != Grid.ALL) {
+				broken = true;
+				return false;
+			}
+			
+			int exactly = once & ~twice;
+			if (exactly != 0) {
+				int bit = exactly & -exactly;
+				int target = -1;
+				for (int k=0; k<Grid.SIZE; k++) {
+					int c = Topology.unitCell(u, k);
+					if ((candidates[c] & bit) != 0) {
+						target = c;
+					} else if (values[c] == 0) {
+						// What keeps the number out of the other cells
+						supportPeers(c, bit);
+					}
+				}
+				place(target, Grid.firstNumber(bit));
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Pointing and claiming: if a number's candidates in one unit all
+	 * lie in another unit too, it can be removed from the rest of that.
+	 */
+	private boolean lockedCandidates() {
+		for (int u=0; u<UNITS; u++) {
+			for (int bit=1; bit<=Grid.ALL; bit<<=1) {
+				int row = -2, col = -2, box = -2, count = 0;
+				
+				for (int k=0; k<Grid.SIZE; k++) {
+					int c = Topology.unitCell(u, k);
+					if ((candidates[c] & bit) == 0) continue;
+					
+					count++;
+					row = row == -2 || row == Topology.row(c) ? Topology.row(c) : -1;
+					col = col == -2 || col == Topology.col(c) ? Topology.col(c) : -1;
+					box = box == -2 || box == Topology.box(c) ? Topology.box(c) : -1;
+				}
+				
+				if (count < 2) continue;
+				
+				boolean changed = false;
+				if (u >= 2 * Grid.SIZE) {
+					if (row >= 0) changed |= eliminate(row, bit, u);
+					if (col >= 0) changed |= eliminate(Grid.SIZE + col, bit, u);
+				} else if (box >= 0) {
+					changed = eliminate(2 * Grid.SIZE + box, bit, u);
+				}
+				
+				if (changed) {
+					for (int k=0; k<Grid.SIZE; k++) {
+						int c = Topology.unitCell(u, k);
+						if ((candidates[c] & bit) != 0) support(c);
+					}
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Removes candidates from the cells of a unit that are not part of
+	 * another unit.
+	 */
+	private boolean eliminate(int unit, int bits, int except) {
+		boolean changed = false;
+		
+		for (int k=0; k<Grid.SIZE; k++) {
+			int c = Topology.unitCell(unit, k);
+			if ((candidates[c] & bits) != 0 && !Topology.inUnit(c, except)) {
+				candidates[c] &= ~bits;
+				changed = true;
+			}
+		}
+		return changed;
+	}
+	
+	/**
+	 * n cells in a unit with only n candidates between them: those
+	 * numbers can be removed from the rest of the unit.
+	 */
+	private boolean nakedSubset(int n) {
+		for (int u=0; u<UNITS; u++) {
+			int count = emptyCells(u);
+			if (count <= n) continue;
+			
+			for (int a=0; a<count; a++) {
+				for (int b=a+1; b<count; b++) {
+					int union = candidates[buffer[a]] | candidates[buffer[b]];
+					
+					if (n == 2) {
+						if (Integer.bitCount(union) == 2
+								&& clearOthers(count, 1 << a | 1 << b, union)) {
+							return true;
+						}
+						continue;
+					}
+					
+					for (int c=b+1; c<count; c++) {
+						int union3 = union | candidates[buffer[c]];
+						if (Integer.bitCount(union3) == 3 && clearOthers(count,
+								1 << a | 1 << b | 1 << c, union3)) {
+							return true;
+						}
+					}
+				}
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * n numbers that can only go in the same n cells of a unit: the
+	 * other candidates can be removed from those cells.
+	 */
+	private boolean hiddenSubset(int n) {
+		for (int u=0; u<UNITS; u++) {
+			for (int d=0; d<Grid.SIZE; d++) {
+				positions[d] = 0;
+				for (int k=0; k<Grid.SIZE; k++) {
+					if ((candidates[Topology.unitCell(u, k)] & 1 << d) != 0) {
+						positions[d] |= 1 << k;
+					}
+				}
+			}
+			
+			for (int a=0; a<Grid.SIZE; a++) {
+				if (!fits(positions[a], n)) continue;
+				
+				for (int b=a+1; b<Grid.SIZE; b++) {
+					if (!fits(positions[b], n)) continue;
+					int union = positions[a] | positions[b];
+					
+					if (n == 2) {
+						if (Integer.bitCount(union) == 2
+								&& keepOnly(u, union, 1 << a | 1 << b)) {
+							return true;
+						}
+						continue;
+					}
+					
+					for (int c=b+1; c<Grid.SIZE; c++) {
+						if (!fits(positions[c], n)) continue;
+						int union3 = union | positions[c];
+						
+						if (Integer.bitCount(union3) == 3
+								&& keepOnly(u, union3, 1 << a | 1 << b | 1 << c)) {
+							return true;
+						}
+					}
+				}
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * X-Wing (n = 2) and Swordfish (n = 3): if a number's candidates in
+	 * n rows all lie in the same n columns, it can be removed from the
+	 * rest of those columns. Same with rows and columns swapped.
+	 */
+	private boolean fish(int n, boolean byColumn) {
+		for (int bit=1; bit<=Grid.ALL; bit<<=1) {
+			for (int line=0; line<Grid.SIZE; line++) {
+				positions[line] = 0;
+				for (int k=0; k<Grid.SIZE; k++) {
+					if ((candidates[cellAt(line, k, byColumn)] & bit) != 0) {
+						positions[line] |= 1 << k;
+					}
+				}
+			}
+			
+			for (int a=0; a<Grid.SIZE; a++) {
+				if (!fits(positions[a], n)) continue;
+				
+				for (int b=a+1; b<Grid.SIZE; b++) {
+					if (!fits(positions[b], n)) continue;
+					int union = positions[a] | positions[b];
+					
+					if (n == 2) {
+						if (Integer.bitCount(union) == 2 && clearLines(bit,
+								union, 1 << a | 1 << b, byColumn)) {
+							return true;
+						}
+						continue;
+					}
+					
+					for (int c=b+1; c<Grid.SIZE; c++) {
+						if (!fits(positions[c], n)) continue;
+						int union3 = union | positions[c];
+						
+						if (Integer.bitCount(union3) == 3 && clearLines(bit,
+								union3, 1 << a | 1 << b | 1 << c, byColumn)) {
+							return true;
+						}
+					}
+				}
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Removes a number from the crossing lines, except in the base lines.
+	 */
+	private boolean clearLines(int bit, int crossing, int base,
+			boolean byColumn) {
+		boolean changed = false;
+		
+		for (int line=0; line<Grid.SIZE; line++) {
+			for (int k=0; k<Grid.SIZE; k++) {
+				int c = cellAt(line, k, byColumn);
+				if ((crossing & 1 << k) == 0 || (candidates[c] & bit) == 0) {
+					continue;
+				}
+				
+				if ((base & 1 << line) != 0) {
+					support(c);
+				} else {
+					candidates[c] &= ~bit;
+					changed = true;
+				}
+			}
+		}
+		
+		if (!changed) supportLow = supportHigh = 0;
+		return changed;
+	}
+	
+	/**
+	 * Collects the empty cells of a unit into the buffer.
+	 */
+	private int emptyCells(int unit) {
+		int count = 0;
+		for (int k=0; k<Grid.SIZE; k++) {
+			int c = Topology.unitCell(unit, k);
+			if (values[c] == 0) buffer[count++] = c;
+		}
+		return count;
+	}
+	
+	/**
+	 * Removes candidates from the buffered cells not in the subset.
+	 */
+	private boolean clearOthers(int count, int subset, int bits) {
+		boolean changed = false;
+		
+		for (int i=0; i<count; i++) {
+			int c = buffer[i];
+			if ((subset & 1 << i) == 0 && (candidates[c] & bits) != 0) {
+				candidates[c] &= ~bits;
+				changed = true;
+			}
+		}
+		
+		if (changed) {
+			for (int i=0; i<count; i++) {
+				if ((subset & 1 << i) != 0) support(buffer[i]);
+			}
+		}
+		return changed;
+	}
+	
+	/**
+	 * Removes all but the given candidates from some cells of a unit.
+	 */
+	private boolean keepOnly(int unit, int cells, int bits) {
+		boolean changed = false;
+		
+		for (int k=0; k<Grid.SIZE; k++) {
+			int c = Topology.unitCell(unit, k);
+			if ((cells & 1 << k) != 0) {
+				support(c);
+				if ((candidates[c] & ~bits) != 0) {
+					candidates[c] &= bits;
+					changed = true;
+				}
+			}
+		}
+		
+		if (!changed) supportLow = supportHigh = 0;
+		return changed;
+	}
+	
+	private static boolean fits(int positions, int n) {
+		return positions != 0 && Integer.bitCount(positions) <= n;
+	}
+	
+	private static int cellAt(int line, int k, boolean byColumn) {
+		return byColumn ? k * Grid.SIZE + line : line * Grid.SIZE + k;
+	}
+}
@@ -0,0 +1,291 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Vegard Løkken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package no.vtek.sudoku;
+
+/**
+ * Undo and redo history of the moves in a game.
+ * 
+ * Each move is kept as one int holding the cell, the number it replaced
+ * and the number placed, and one int holding the peers of the cell that
+ * had the number removed from their notes by the move. The board after a move is an immutable
+ * snapshot of three bands of three rows, with each row packed into a
+ * long. A move copies only the band it touches, so a snapshot shares
+ * the rest with the one before it. Only every 32nd snapshot is kept.
+ * That costs a few bytes per move however long the game goes on, and
+ * any point in the history is fewer than 32 moves from a kept snapshot
+ * or the current one.
+ *
+ * @author Vegard Løkken
+ * @version 0.25
+ */
+final class MoveHistory {
+	
+	/** How many moves there are between kept snapshots */
+	static final int CHECKPOINT = 32;
+	
+	private int[] moves = new int[64];
+	private int[] cleared = new int[64];
+	private Snapshot[] checkpoints = new Snapshot[4];
+	private Snapshot current;
+	private int position = 0;
+	private int size = 0;
+	
+	/**
+	 * @param game The board before the first move
+	 */
+	MoveHistory(int[][] game) {
+		current = Snapshot.of(game);
+		checkpoints[0] = current;
+	}
+	
+	/**
+	 * Adds a move at the current position, dropping the moves that
+	 * could have been redone.
+	 * 
+	 * @param cell The cell (0-80)
+	 * @param from The number that was in the cell, 0 for empty
+	 * @param to The number placed, 0 for empty
+	 */
+	void record(int cell, int from, int to) {
+		record(cell, from, to, 0);
+	}
+	
+	/**
+	 * Adds a move at the current position, dropping the moves that
+	 * could have been redone.
+	 * 
+	 * @param cell The cell (0-80)
+	 * @param from The number that was in the cell, 0 for empty
+	 * @param to The number placed, 0 for empty
+	 * @param peers The peers that had the number removed from their notes,
+	 *		as returned by {@link Notes#eliminate}
+	 */
+	void record(int cell, int from, int to, int peers) {
+		if (position == moves.length) {
+			int[] grown = new int[moves.length * 2];
+			System.arraycopy(moves, 0, grown, 0, position);
+			moves = grown;
+			
+			grown = new int[cleared.length * 2];
+			System.arraycopy(cleared, 0, grown, 0, position);
+			cleared = grown;
+		}
+		
+		cleared[position] = peers;
+		moves[position++] = cell << 8 | from << 4 | to;
+		size = position;
+		current = current.with(cell, to);
+		
+		if (position % CHECKPOINT == 0) {
+			int index = position / CHECKPOINT;
+			if (index == checkpoints.length) {
+				Snapshot[] grown = new Snapshot[index * 2];
+				System.arraycopy(checkpoints, 0, grown, 0, index);
+				checkpoints = grown;
+			}
+			checkpoints[index] = current;
+		}
+	}
+	
+	/**
+	 * Drops the moves after the current position.
+	 */
+	void truncate() {
+		size = position;
+	}
+	
+	boolean canUndo() {
+		return position > 0;
+	}
+	
+	boolean canRedo() {
+		return position < size;
+	}
+	
+	/**
+	 * @return Number of moves made up to the current position
+	 */
+	int getPosition() {
+		return position;
+	}
+	
+	/**
+	 * @return Number of moves that can be redone from the start
+	 */
+	int size() {
+		return size;
+	}
+	
+	/**
+	 * @param move The move, 0 - size()-1
+	 * @return The cell of the move
+	 */
+	int getCell(int move) {
+		return moves[move] >>> 8;
+	}
+	
+	/**
+	 * @param move The move, 0 - size()-1
+	 * @return The number placed by the move, 0 for empty
+	 */
+	int getNumber(int move) {
+		return moves[move] & 0xF;
+	}
+	
+	/**
+	 * @param move The move, 0 - size()-1
+	 * @return The peers that had the number removed from their notes
+	 */
+	int getClearedNotes(int move) {
+		return cleared[move];
+	}
+	
+	/**
+	 * @return The board at the current position
+	 */
+	Snapshot getCurrent() {
+		return current;
+	}
+	
+	/**
+	 * Moves the current position, keeping the moves after it so they can
+	 * be redone.
+	 * 
+	 * @param target The number of moves made at the new position,
+	 *		0 - size()
+	 * @return The board at that position
+	 */
+	Snapshot jump(int target) {
+		if (target < 0 || target > size) {
+			throw new IndexOutOfBoundsException("No move " + target);
+		}
+		
+		// Start from the closest of the current board and the kept ones
+		int below = target / CHECKPOINT * CHECKPOINT;
+		int above = below + CHECKPOINT;
+		int from = below;
+		Snapshot board = checkpoints[below / CHECKPOINT];
+		
+		if (above <= size && above - target < target - from) {
+			from = above;
+			board = checkpoints[above / CHECKPOINT];
+		}
+		if (Math.abs(position - target) < Math.abs(from - target)) {
+			from = position;
+			board = current;
+		}
+		
+		for (; from < target; from++) {
+			int move = moves[from];
+			board = board.with(move >>> 8, move & 0xF);
+		}
+		for (; from > target; from--) {
+			int move = moves[from - 1];
+			board = board.with(move >>> 8, move >>> 4 & 0xF);
+		}
+		
+		position = target;
+		current = board;
+		return board;
+	}
+	
+	/**
+	 * An immutable board.
+	 */
+	static final class Snapshot {
+		
+		private static final int BITS = 4;
+		
+		private final long[][] bands;
+		
+		private Snapshot(long[][] bands) {
+			this.bands = bands;
+		}
+		
+		/**
+		 * @param game A 9 x 9 game board
+		 * @return A snapshot of the board
+		 */
+		static Snapshot of(int[][] game) {
+			long[][] bands = new long[3][3];
+			for (int row=0; row<Topology.SIZE; row++) {
+				long packed = 0;
+				for (int col=0; col<Topology.SIZE; col++) {
+					packed |= (long) game[row][col] << col * BITS;
+				}
+				bands[row / 3][row % 3] = packed;
+			}
+			return new Snapshot(bands);
+		}
+		
+		/**
+		 * @param cell The cell (0-80)
+		 * @return The number in the cell, 0 for empty
+		 */
+		int get(int cell) {
+			int row = Topology.row(cell);
+			return (int) (bands[row / 3][row % 3]
+					>>> Topology.col(cell) * BITS) & 0xF;
+		}
+		
+		/**
+		 * @param cell The cell (0-80)
+		 * @param num The number, 0 for empty
+		 * @return A snapshot with the number placed, sharing the untouched
+		 *		bands with this one
+		 */
+		Snapshot with(int cell, int num) {
+			int row = Topology.row(cell);
+			int shift = Topology.col(cell) * BITS;
+			
+			long[] band = bands[row / 3].clone();
+			band[row % 3] = band[row % 3] & ~(0xFL << shift)
+					| (long) num << shift;
+			
+			long[][] changed = bands.clone();
+			changed[row / 3] = band;
+			return new Snapshot(changed);
+		}
+		
+		/**
+		 * Finds the cells of a row that differ from another snapshot.
+		 * 
+		 * @param other The other snapshot
+		 * @param row The row (0-8)
+		 * @return Mask where bit n is set if column n differs
+		 */
+		int changes(Snapshot other, int row) {
+			long[] band = bands[row / 3], otherBand = other.bands[row / 3];
+			if (band == otherBand) return 0;
+			
+			long diff = band[row % 3] ^ otherBand[row % 3];
+			int mask = 0;
+			for (int col=0; diff != 0; col++, diff >>>= BITS) {
+				if ((diff & 0xF) != 0) mask |= 1 << col;
+			}
+			return mask;
+		}
+	}
+}
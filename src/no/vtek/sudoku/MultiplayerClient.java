@@ -0,0 +1,264 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Vegard Løkken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package no.vtek.sudoku;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+
+/**
+ * Client for the {@link MultiplayerServer}.
+ * 
+ * Frames from the server are read on a background thread and passed on
+ * to a listener, which is called on that thread. The client keeps its
+ * own copy of the board, and a change is only applied if it is at least
+ * as new as the last one seen for that cell. Cell locks are passed on
+ * the same way, by the version the server gives each change to them.
+ * 
+ * @author Vegard Løkken
+ * @version 0.25
+ */
+public class MultiplayerClient implements Runnable {
+	
+	/**
+	 * Gets what happens in the room.
+	 */
+	public interface Listener {
+		
+		/**
+		 * @param player Our own player number
+		 * @param game The board, game[row][col]
+		 * @param given True for the cells given from the start
+		 */
+		void boardReceived(int player, int[][] game, boolean[][] given);
+		
+		void cellChanged(int row, int col, int number, int player);
+		
+		void scoreChanged(int player, int score);
+		
+		void cellLocked(int row, int col, int player);
+		
+		void cellUnlocked(int row, int col, int player);
+		
+		void disconnected();
+	}
+	
+	private final SocketChannel channel;
+	private final Listener listener;
+	private final ByteBuffer in =
+			ByteBuffer.allocate(8 * MultiplayerProtocol.MAX_SIZE);
+	private final ByteBuffer out =
+			ByteBuffer.allocate(MultiplayerProtocol.MAX_SIZE);
+	private final MultiplayerProtocol.Frame frame =
+			new MultiplayerProtocol.Frame();
+	private final int[] cells = new int[Topology.CELLS];
+	private final int[] sequences = new int[Topology.CELLS];
+	private final int[] lockVersions = new int[Topology.CELLS];
+	private final int[] lockOwners = new int[Topology.CELLS];
+	private int player = -1;
+	
+	/**
+	 * Connects to a server and starts reading from it.
+	 * 
+	 * @param host The server
+	 * @param port The port
+	 * @param listener Gets what happens in the room
+	 * @throws IOException If the server can't be reached
+	 */
+	public MultiplayerClient(String host, int port, Listener listener)
+			throws IOException {
+		
+		this.listener = listener;
+		Arrays.fill(lockVersions, -1);
+		Arrays.fill(lockOwners, -1);
+		
+		channel = SocketChannel.open(new InetSocketAddress(host, port));
+		channel.socket().setTcpNoDelay(true);
+		
+		Thread thread = new Thread(this, "MultiplayerClient");
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	/**
+	 * Joins a room, which gets a new game if nobody is in it.
+	 * 
+	 * @param room The room number
+	 * @param difficulty Difficulty of a new game
+	 * @throws IOException If the server is gone
+	 */
+	public synchronized void join(int room, int difficulty)
+			throws IOException {
+		
+		MultiplayerProtocol.writeJoin(out, room, difficulty);
+		send();
+	}
+	
+	/**
+	 * Asks the server to change a cell. The change shows up through the
+	 * listener once the server has accepted it.
+	 * 
+	 * @param row The row
+	 * @param col The column
+	 * @param number The number, or 0 to empty the cell
+	 * @throws IOException If the server is gone
+	 */
+	public synchronized void setNumber(int row, int col, int number)
+			throws IOException {
+		
+		MultiplayerProtocol.writeSet(out, Topology.cell(row, col), number);
+		send();
+	}
+	
+	/**
+	 * Asks the server to lock a cell while we fill it in. The lock runs
+	 * out after {@link CellReservations#LEASE} milliseconds unless it is
+	 * asked for again, and it is let go when the cell is changed.
+	 * 
+	 * @param row The row
+	 * @param col The column
+	 * @throws IOException If the server is gone
+	 */
+	public synchronized void lock(int row, int col) throws IOException {
+		MultiplayerProtocol.writeLock(out, Topology.cell(row, col), 0, 0);
+		send();
+	}
+	
+	public synchronized void unlock(int row, int col) throws IOException {
+		MultiplayerProtocol.writeUnlock(out, Topology.cell(row, col), 0, 0);
+		send();
+	}
+	
+	public int getPlayer() {
+		return player;
+	}
+	
+	public void close() {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			// Closed anyway
+		}
+	}
+	
+	/**
+	 * Reads frames until the connection closes.
+	 */
+	@Override
+	public void run() {
+		try {
+			while (true) {
+				if (channel.read(in) < 0) throw new EOFException();
+				
+				in.flip();
+				while (MultiplayerProtocol.read(in, frame)) handle();
+				in.compact();
+			}
+			
+		} catch (IOException e) {
+			close();
+			listener.disconnected();
+		}
+	}
+	
+	private synchronized void send() throws IOException {
+		out.flip();
+		while (out.hasRemaining()) channel.write(out);
+		out.clear();
+	}
+	
+	/**
+	 * Remembers the version of a lock change, unless a newer one has been
+	 * seen for the cell already. Versions wrap, so they are compared by
+	 * their difference.
+	 */
+	private boolean isNewLock(int cell, int version) {
+		if (lockVersions[cell] >= 0
+				&& (short) (version - lockVersions[cell]) <= 0) {
+			return false;
+		}
+		
+		lockVersions[cell] = version;
+		return true;
+	}
+	
+	private void handle() {
+		switch (frame.type) {
+			case MultiplayerProtocol.BOARD:
+				player = frame.player;
+				
+				int[][] game = new int[Topology.SIZE][Topology.SIZE];
+				boolean[][] given = new boolean[Topology.SIZE][Topology.SIZE];
+				for (int cell=0; cell<Topology.CELLS; cell++) {
+					int row = Topology.row(cell);
+					int col = Topology.col(cell);
+					
+					cells[cell] = frame.cells[cell];
+					sequences[cell] = frame.sequence;
+					game[row][col] = frame.cells[cell];
+					given[row][col] = frame.given[cell];
+				}
+				
+				listener.boardReceived(player, game, given);
+				break;
+				
+			case MultiplayerProtocol.CELL:
+				int cell = frame.cell;
+				
+				if (frame.sequence >= sequences[cell]) {
+					cells[cell] = frame.number;
+					sequences[cell] = frame.sequence;
+					listener.cellChanged(Topology.row(cell), Topology.col(cell),
+							frame.number, frame.player);
+				}
+				break;
+				
+			case MultiplayerProtocol.SCORE:
+				listener.scoreChanged(frame.player, frame.score);
+				break;
+				
+			case MultiplayerProtocol.LOCK:
+				if (isNewLock(frame.cell, frame.cellVersion)) {
+					lockOwners[frame.cell] = frame.player;
+					listener.cellLocked(Topology.row(frame.cell),
+							Topology.col(frame.cell), frame.player);
+				}
+				break;
+				
+			case MultiplayerProtocol.UNLOCK:
+				if (isNewLock(frame.cell, frame.cellVersion)
+						&& lockOwners[frame.cell] >= 0) {
+					
+					lockOwners[frame.cell] = -1;
+					listener.cellUnlocked(Topology.row(frame.cell),
+							Topology.col(frame.cell), frame.player);
+				}
+				break;
+		}
+	}
+}
@@ -0,0 +1,303 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Vegard Løkken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package no.vtek.sudoku;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+
+/**
+ * Binary frames sent between {@link MultiplayerServer} and
+ * {@link MultiplayerClient}.
+ * 
+ * Every frame starts with a short holding the length of the rest of the
+ * frame, followed by a type byte. Cells are numbered 0 - 80 row by row,
+ * and the number 0 means an empty cell. A board is sent with two cells
+ * to a byte, as in {@link Grid#writePacked}, followed by one bit per cell
+ * telling if it was given.
+ * 
+ * <pre>
+ * JOIN    byte version, int room, int difficulty     client to server
+ * SET     byte cell, byte number                     client to server
+ * LOCK    byte cell, byte player, short version      both ways
+ * UNLOCK  byte cell, byte player, short version      both ways
+ * BOARD   byte version, byte player, int sequence,
+ *         41 * byte cells, 11 * byte given           server to client
+ * CELL    byte cell, byte number, byte player,
+ *         int sequence                               server to client
+ * SCORE   byte player, int score                     server to client
+ * </pre>
+ * 
+ * The frames are written into and read from buffers owned by the caller,
+ * and read frames are stored in a reusable {@link Frame}, so nothing is
+ * allocated per frame. A peer speaking another {@link #VERSION} is turned
+ * away when it joins.
+ * 
+ * The server counts the changes to the lock of each cell, wrapping at
+ * 65536, and sends the count with LOCK and UNLOCK, since those frames
+ * may overtake each other on their way out. Clients send 0.
+ * 
+ * @author Vegard Løkken
+ * @version 0.25
+ */
+public final class MultiplayerProtocol {
+	public static final int VERSION = 2;
+	
+	public static final byte JOIN = 1;
+	public static final byte SET = 2;
+	public static final byte LOCK = 3;
+	public static final byte UNLOCK = 4;
+	public static final byte BOARD = 16;
+	public static final byte CELL = 17;
+	public static final byte SCORE = 18;
+	
+	static final int LENGTH = 2;
+	static final int MAX_FRAME = 64;
+	
+	/** Largest frame including the length */
+	public static final int MAX_SIZE = LENGTH + MAX_FRAME;
+	
+	private static final int PACKED = (Topology.CELLS + 1) / 2;
+	private static final int MASK = (Topology.CELLS + 7) / 8;
+	
+	/**
+	 * A frame that has been read. The fields that don't belong to its
+	 * type keep whatever they held before.
+	 */
+	public static final class Frame {
+		int type;
+		int version;
+		int room;
+		int difficulty;
+		int cell;
+		int number;
+		int player;
+		int sequence;
+		int cellVersion;
+		int score;
+		final int[] cells = new int[Topology.CELLS];
+		final boolean[] given = new boolean[Topology.CELLS];
+		
+		public int getType() {
+			return type;
+		}
+	}
+	
+	private MultiplayerProtocol() {
+	}
+	
+	public static void writeJoin(ByteBuffer out, int room, int difficulty) {
+		start(out, JOIN, 9);
+		out.put((byte) VERSION);
+		out.putInt(room);
+		out.putInt(difficulty);
+	}
+	
+	public static void writeSet(ByteBuffer out, int cell, int number) {
+		start(out, SET, 2);
+		out.put((byte) cell);
+		out.put((byte) number);
+	}
+	
+	public static void writeLock(ByteBuffer out, int cell, int player,
+			int version) {
+		
+		start(out, LOCK, 4);
+		out.put((byte) cell);
+		out.put((byte) player);
+		out.putShort((short) version);
+	}
+	
+	public static void writeUnlock(ByteBuffer out, int cell, int player,
+			int version) {
+		
+		start(out, UNLOCK, 4);
+		out.put((byte) cell);
+		out.put((byte) player);
+		out.putShort((short) version);
+	}
+	
+	public static void writeBoard(ByteBuffer out, int player, int sequence,
+			int[] cells, boolean[] given) {
+		
+		start(out, BOARD, 6 + PACKED + MASK);
+		out.put((byte) VERSION);
+		out.put((byte) player);
+		out.putInt(sequence);
+		
+		for (int cell=0; cell<Topology.CELLS; cell+=2) {
+			int low = cell + 1 < Topology.CELLS ? cells[cell + 1] : 0;
+			out.put((byte) (cells[cell] << 4 | low));
+		}
+		
+		int mask = out.position();
+		for (int i=0; i<MASK; i++) out.put((byte) 0);
+		for (int cell=0; cell<Topology.CELLS; cell++) {
+			if (given[cell]) {
+				int i = mask + (cell >> 3);
+				out.put(i, (byte) (out.get(i) | 1 << (cell & 7)));
+			}
+		}
+	}
+	
+	public static void writeCell(ByteBuffer out, int cell, int number,
+			int player, int sequence) {
+		
+		start(out, CELL, 7);
+		out.put((byte) cell);
+		out.put((byte) number);
+		out.put((byte) player);
+		out.putInt(sequence);
+	}
+	
+	public static void writeScore(ByteBuffer out, int player, int score) {
+		start(out, SCORE, 5);
+		out.put((byte) player);
+		out.putInt(score);
+	}
+	
+	/**
+	 * Reads one frame, if all of it is in the buffer.
+	 * 
+	 * @param in Buffer to read from, positioned at the start of a frame
+	 * @param frame Where to put what was read
+	 * @return False if the frame isn't complete, and nothing was read
+	 * @throws ProtocolException If the frame is not valid
+	 */
+	public static boolean read(ByteBuffer in, Frame frame)
+			throws ProtocolException {
+		
+		if (in.remaining() < LENGTH) return false;
+		
+		int length = in.getShort(in.position()) & 0xFFFF;
+		if (length == 0 || length > MAX_FRAME) {
+			throw new ProtocolException("Bad frame length " + length);
+		}
+		if (in.remaining() < LENGTH + length) return false;
+		
+		int start = in.position();
+		in.position(start + LENGTH);
+		frame.type = in.get();
+		
+		switch (frame.type) {
+			case JOIN:
+				expect(length, 10);
+				frame.version = in.get();
+				frame.room = in.getInt();
+				frame.difficulty = in.getInt();
+				checkVersion(frame.version);
+				break;
+				
+			case SET:
+				expect(length, 3);
+				frame.cell = cell(in.get());
+				frame.number = number(in.get());
+				break;
+				
+			case LOCK:
+			case UNLOCK:
+				expect(length, 5);
+				frame.cell = cell(in.get());
+				frame.player = in.get() & 0xFF;
+				frame.cellVersion = in.getShort() & 0xFFFF;
+				break;
+				
+			case BOARD:
+				expect(length, 7 + PACKED + MASK);
+				frame.version = in.get();
+				checkVersion(frame.version);
+				frame.player = in.get() & 0xFF;
+				frame.sequence = in.getInt();
+				
+				for (int cell=0; cell<Topology.CELLS; cell+=2) {
+					int b = in.get();
+					frame.cells[cell] = number(b >> 4 & 0xF);
+					if (cell + 1 < Topology.CELLS) {
+						frame.cells[cell + 1] = number(b & 0xF);
+					}
+				}
+				
+				int mask = in.position();
+				for (int cell=0; cell<Topology.CELLS; cell++) {
+					int bits = in.get(mask + (cell >> 3));
+					frame.given[cell] = (bits & 1 << (cell & 7)) != 0;
+				}
+				in.position(mask + MASK);
+				break;
+				
+			case CELL:
+				expect(length, 8);
+				frame.cell = cell(in.get());
+				frame.number = number(in.get());
+				frame.player = in.get() & 0xFF;
+				frame.sequence = in.getInt();
+				break;
+				
+			case SCORE:
+				expect(length, 6);
+				frame.player = in.get() & 0xFF;
+				frame.score = in.getInt();
+				break;
+				
+			default:
+				throw new ProtocolException("Unknown frame " + frame.type);
+		}
+		
+		return true;
+	}
+	
+	private static void start(ByteBuffer out, byte type, int size) {
+		out.putShort((short) (1 + size));
+		out.put(type);
+	}
+	
+	private static void expect(int length, int expected)
+			throws ProtocolException {
+		
+		if (length != expected) {
+			throw new ProtocolException("Bad frame length " + length);
+		}
+	}
+	
+	private static void checkVersion(int version) throws ProtocolException {
+		if (version != VERSION) {
+			throw new ProtocolException("Unsupported version " + version);
+		}
+	}
+	
+	private static int cell(int cell) throws ProtocolException {
+		cell &= 0xFF;
+		if (cell >= Topology.CELLS) {
+			throw new ProtocolException("Bad cell " + cell);
+		}
+		return cell;
+	}
+	
+	private static int number(int number) throws ProtocolException {
+		if (number < 0 || number > Topology.SIZE) {
+			throw new ProtocolException("Bad number " + number);
+		}
+		return number;
+	}
+}
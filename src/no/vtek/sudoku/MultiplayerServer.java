@@ -0,0 +1,398 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Vegard Løkken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package no.vtek.sudoku;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Server for network games, where several players fill in the same board.
+ * 
+ * The connections are spread over a few worker threads, each waiting on
+ * its own selector, so one server can keep thousands of players in
+ * hundreds of rooms. A player joins a room by its number, and the room is
+ * created with a new game the first time. After the full board, players
+ * only get the cells that change. See {@link GameRoom} for the rules and
+ * {@link MultiplayerProtocol} for the frames.
+ * 
+ * Frames go straight to the socket, and a buffer from a shared pool is
+ * only used for a player while the socket can't take more. A player that
+ * doesn't keep up with reading is disconnected instead of being buffered
+ * for without limit. Cell locks that run out are cleared by a sweeper
+ * thread once a second.
+ * 
+ * @author Vegard Løkken
+ * @version 0.25
+ */
+public class MultiplayerServer implements Runnable {
+	public static final int DEFAULT_PORT = 9451;
+	
+	private static final int IN_CAPACITY = 8 * MultiplayerProtocol.MAX_SIZE;
+	private static final int OUT_CAPACITY = 16 * 1024;
+	private static final int POOLED = 256;
+	private static final long SWEEP = 1000;
+	
+	private final ServerSocketChannel serverChannel;
+	private final Worker[] workers;
+	private final GameRooms rooms = new GameRooms();
+	private final BufferPool outPool = new BufferPool(OUT_CAPACITY, POOLED);
+	private final ScheduledExecutorService sweeper =
+			Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "MultiplayerServer sweeper");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+	private int nextWorker = 0;
+	
+	/**
+	 * Binds the server to a port on this machine.
+	 * 
+	 * @param port The port, or 0 for any free port
+	 * @throws IOException If the port can't be bound
+	 */
+	public MultiplayerServer(int port) throws IOException {
+		this(port, null, Math.min(4,
+				Runtime.getRuntime().availableProcessors()));
+	}
+	
+	/**
+	 * Binds the server to a port.
+	 * 
+	 * @param port The port, or 0 for any free port
+	 * @param address The address to listen on, or null for localhost
+	 * @param threads Number of worker threads
+	 * @throws IOException If the port can't be bound
+	 */
+	public MultiplayerServer(int port, InetAddress address, int threads)
+			throws IOException {
+		
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.socket().setReuseAddress(true);
+		serverChannel.socket().bind(new InetSocketAddress(address != null
+				? address : InetAddress.getByName(null), port), 1000);
+		
+		workers = new Worker[threads];
+		for (int i=0; i<threads; i++) workers[i] = new Worker();
+	}
+	
+	public int getPort() {
+		return serverChannel.socket().getLocalPort();
+	}
+	
+	/**
+	 * Accepts connections on a background thread.
+	 */
+	public void start() {
+		Thread thread = new Thread(this, "MultiplayerServer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	/**
+	 * Starts the workers and accepts connections until the server is
+	 * stopped.
+	 */
+	@Override
+	public void run() {
+		for (Worker worker : workers) {
+			Thread thread = new Thread(worker, "MultiplayerServer worker");
+			thread.setDaemon(true);
+			thread.start();
+		}
+		
+		sweeper.scheduleWithFixedDelay(new Runnable() {
+			private final ByteBuffer buffer =
+					ByteBuffer.allocate(MultiplayerProtocol.MAX_SIZE);
+			
+			@Override
+			public void run() {
+				rooms.expire(buffer);
+			}
+		}, SWEEP, SWEEP, TimeUnit.MILLISECONDS);
+		
+		while (serverChannel.isOpen()) {
+			try {
+				SocketChannel channel = serverChannel.accept();
+				channel.configureBlocking(false);
+				channel.socket().setTcpNoDelay(true);
+				
+				Worker worker = workers[nextWorker];
+				nextWorker = (nextWorker + 1) % workers.length;
+				worker.wake(new Connection(channel, worker));
+				
+			} catch (IOException e) {
+				if (serverChannel.isOpen()) {
+					System.err.println("Error while accepting connection");
+				}
+			}
+		}
+	}
+	
+	public static void main(String[] args) throws IOException {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+		
+		MultiplayerServer server = new MultiplayerServer(port);
+		System.err.println("Multiplayer server listening on port "
+				+ server.getPort());
+		server.run();
+	}
+	
+	public void stop() {
+		try {
+			serverChannel.close();
+		} catch (IOException e) {
+			// Closing anyway
+		}
+		
+		sweeper.shutdownNow();
+		
+		for (Worker worker : workers) {
+			try {
+				worker.selector.close();
+			} catch (IOException e) {
+				// Closing anyway
+			}
+		}
+	}
+	
+	/**
+	 * @return Number of rooms with players in them
+	 */
+	public int getRoomCount() {
+		return rooms.size();
+	}
+	
+	/**
+	 * Selector loop for a share of the connections. Other threads hand
+	 * work to it through the queue and wake it up.
+	 */
+	private class Worker implements Runnable {
+		final Selector selector;
+		final Queue<Connection> pending =
+				new ConcurrentLinkedQueue<Connection>();
+		final MultiplayerProtocol.Frame frame =
+				new MultiplayerProtocol.Frame();
+		final ByteBuffer buffer =
+				ByteBuffer.allocate(MultiplayerProtocol.MAX_SIZE);
+		
+		Worker() throws IOException {
+			selector = Selector.open();
+		}
+		
+		void wake(Connection connection) {
+			pending.add(connection);
+			selector.wakeup();
+		}
+		
+		@Override
+		public void run() {
+			while (selector.isOpen()) {
+				try {
+					selector.select();
+				} catch (Exception e) {
+					break;
+				}
+				
+				Connection connection;
+				while ((connection = pending.poll()) != null) {
+					connection.update();
+				}
+				
+				if (!selector.isOpen()) break;
+				
+				Iterator<SelectionKey> keys =
+						selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					
+					connection = (Connection) key.attachment();
+					if (!key.isValid()) continue;
+					
+					if (key.isReadable()) connection.read();
+					if (key.isValid() && key.isWritable()) connection.write();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * One player. Frames are read and handled on the worker thread, while
+	 * any thread may send frames to it. Frames are written straight to
+	 * the socket, and only what it doesn't take is kept in a buffer from
+	 * the pool until it can be written.
+	 */
+	class Connection extends GameRoom.Member {
+		private final SocketChannel channel;
+		private final Worker worker;
+		private final ByteBuffer in = ByteBuffer.allocate(IN_CAPACITY);
+		private ByteBuffer out = null;
+		private SelectionKey key = null;
+		private volatile boolean closing = false;
+		
+		Connection(SocketChannel channel, Worker worker) {
+			this.channel = channel;
+			this.worker = worker;
+		}
+		
+		/**
+		 * Sends a frame, or queues what the socket doesn't take right away.
+		 */
+		@Override
+		synchronized void send(ByteBuffer frame) {
+			if (closing) return;
+			
+			int start = frame.position();
+			
+			try {
+				if (out == null) {
+					channel.write(frame);
+					if (!frame.hasRemaining()) return;
+					
+					out = outPool.acquire();
+					worker.wake(this);
+				}
+				
+				if (out.remaining() < frame.remaining()) {
+					close();
+				} else {
+					out.put(frame);
+				}
+				
+			} catch (IOException e) {
+				close();
+			} finally {
+				frame.position(start);
+			}
+		}
+		
+		/**
+		 * Disconnects the player. Safe to call from any thread.
+		 */
+		@Override
+		synchronized void close() {
+			if (closing) return;
+			
+			closing = true;
+			worker.wake(this);
+		}
+		
+		/* Worker thread only */
+		void update() {
+			if (key == null && !closing) {
+				try {
+					key = channel.register(worker.selector,
+							SelectionKey.OP_READ, this);
+				} catch (IOException e) {
+					close();
+				}
+			}
+			
+			synchronized (this) {
+				if (!closing && out != null && key.isValid()) {
+					key.interestOps(SelectionKey.OP_READ
+							| SelectionKey.OP_WRITE);
+				}
+			}
+			
+			// Rooms lock before connections, so leave outside the lock
+			if (closing && channel.isOpen()) disconnect();
+		}
+		
+		/* Worker thread only */
+		void read() {
+			try {
+				if (channel.read(in) < 0) {
+					close();
+					return;
+				}
+				
+				in.flip();
+				while (MultiplayerProtocol.read(in, worker.frame)) {
+					handle(worker.frame, rooms, worker.buffer);
+				}
+				in.compact();
+				
+			} catch (IOException e) {
+				in.clear();
+				close();
+			}
+		}
+		
+		/* Worker thread only */
+		synchronized void write() {
+			if (out == null) return;
+			
+			out.flip();
+			try {
+				channel.write(out);
+			} catch (IOException e) {
+				close();
+			}
+			out.compact();
+			
+			if (out.position() == 0) {
+				outPool.release(out);
+				out = null;
+				if (key.isValid()) key.interestOps(SelectionKey.OP_READ);
+			}
+		}
+		
+		/* Worker thread only */
+		private void disconnect() {
+			if (key != null) key.cancel();
+			try {
+				channel.close();
+			} catch (IOException e) {
+				// Closed anyway
+			}
+			
+			synchronized (this) {
+				if (out != null) {
+					outPool.release(out);
+					out = null;
+				}
+			}
+			
+			leave(rooms);
+		}
+	}
+}
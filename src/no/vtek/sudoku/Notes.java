@@ -0,0 +1,123 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Vegard Løkken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package no.vtek.sudoku;
+
+/**
+ * Pencil marks: the numbers a player has noted as possible in each
+ * cell.
+ * 
+ * Each cell holds a 9-bit mask where bit n-1 represents number n, the
+ * same way as the candidates in {@link Grid}. Removing a placed number
+ * from the notes around it only touches the cell's 20 peers.
+ * 
+ * @author Vegard Løkken
+ * @version 0.25
+ */
+final class Notes {
+	private final int[] masks = new int[Topology.CELLS];
+	
+	/**
+	 * @param cell The cell (0-80)
+	 * @return Mask of the numbers noted in the cell
+	 */
+	int get(int cell) {
+		return masks[cell];
+	}
+	
+	/**
+	 * @param cell The cell (0-80)
+	 * @param mask Mask of the numbers to note, replacing the old ones
+	 */
+	void set(int cell, int mask) {
+		masks[cell] = mask & Grid.ALL;
+	}
+	
+	/**
+	 * Notes a number in a cell, or removes it if it was noted.
+	 * 
+	 * @param cell The cell (0-80)
+	 * @param num The number (1-9)
+	 */
+	void toggle(int cell, int num) {
+		masks[cell] ^= 1 << (num - 1);
+	}
+	
+	void clear(int cell) {
+		masks[cell] = 0;
+	}
+	
+	/**
+	 * Removes a number from the notes of a cell's peers, for when it is
+	 * placed in the cell.
+	 * 
+	 * @param cell The cell (0-80)
+	 * @param num The number placed (1-9)
+	 * @return Mask of the peers that had the number noted, where bit n is
+	 *		peer n of the cell, as in {@link Topology#peer}
+	 */
+	int eliminate(int cell, int num) {
+		int bit = 1 << (num - 1);
+		int removed = 0;
+		
+		for (int i=0; i<Topology.PEERS; i++) {
+			int peer = Topology.peer(cell, i);
+			if ((masks[peer] & bit) != 0) removed |= 1 << i;
+			masks[peer] &= ~bit;
+		}
+		return removed;
+	}
+	
+	/**
+	 * Notes a number again in some of a cell's peers, for when placing it
+	 * is undone.
+	 * 
+	 * @param cell The cell (0-80)
+	 * @param num The number (1-9)
+	 * @param peers Mask of the peers, as returned by {@link #eliminate}
+	 */
+	void restore(int cell, int num, int peers) {
+		for (; peers != 0; peers &= peers - 1) {
+			int i = Integer.numberOfTrailingZeros(peers);
+			masks[Topology.peer(cell, i)] |=
+					1 << (num - 1);
+		}
+	}
+	
+	/**
+	 * Removes a number from some of a cell's peers again, for when placing
+	 * it is redone.
+	 * 
+	 * @param cell The cell (0-80)
+	 * @param num The number (1-9)
+	 * @param peers Mask of the peers, as returned by {@link #eliminate}
+	 */
+	void remove(int cell, int num, int peers) {
+		for (; peers != 0; peers &= peers - 1) {
+			int i = Integer.numberOfTrailingZeros(peers);
+			masks[Topology.peer(cell, i)] &=
+					~(1 << (num - 1));
+		}
+	}
+}
@@ -0,0 +1,357 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Vegard Løkken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package no.vtek.sudoku;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * A file of pregenerated games, so that games can be served at once
+ * instead of being generated on demand.
+ * 
+ * The file starts with a header (magic, version, record size and a table
+ * of runs) followed by fixed size records: difficulty level, number of
+ * clues, rating, and the puzzle and its solution packed two cells per
+ * byte. Each append adds a run of records with one level, and the table
+ * holds the level and length of every run in file order. The file is
+ * memory mapped and only the header is read when opening it, so opening
+ * the bank and picking a game take the same time no matter how big the
+ * bank is.
+ * 
+ * The table is updated after the records are on disk, so records left
+ * by an append that didn't finish are ignored.
+ * 
+ * Run this class to build or extend a bank:
+ * <pre>java -cp Sudoku.jar no.vtek.sudoku.PuzzleBank file easy medium hard</pre>
+ * 
+ * @author Vegard Løkken
+ * @version 0.25
+ */
+public class PuzzleBank {
+	public static final String FILENAME = "Puzzles.bank";
+	
+	private static final int MAGIC = 0x53444B42; // "SDKB"
+	private static final int VERSION = 3;
+	
+	/* Magic, version, record size and number of runs, then the runs */
+	private static final int RUNS = 12;
+	private static final int MAX_RUNS = 256;
+	private static final int HEADER_SIZE = RUNS + 4 + MAX_RUNS * 8;
+	
+	private static final int DIFFICULTY = 0;
+	private static final int CLUES = 1;
+	private static final int RATING = 2;
+	private static final int PUZZLE = 4;
+	private static final int SOLUTION = PUZZLE + Grid.PACKED_SIZE;
+	private static final int RECORD_SIZE = SOLUTION + Grid.PACKED_SIZE + 2;
+	
+	private final MappedByteBuffer buffer;
+	private final Map<Integer, Level> levels = new HashMap<Integer, Level>();
+	
+	/**
+	 * Where the runs of one level are in the file.
+	 */
+	private static class Level {
+		int size = 0;
+		int runs = 0;
+		
+		/* Offset of the first record of each run */
+		int[] offsets = new int[4];
+		
+		/* Number of records of the level up to the end of each run */
+		int[] ends = new int[4];
+		
+		void add(int offset, int count) {
+			if (runs == offsets.length) {
+				offsets = Arrays.copyOf(offsets, runs * 2);
+				ends = Arrays.copyOf(ends, runs * 2);
+			}
+			size += count;
+			offsets[runs] = offset;
+			ends[runs++] = size;
+		}
+		
+		int offset(int n) {
+			if (n < 0 || n >= size) {
+				throw new IndexOutOfBoundsException("No game " + n);
+			}
+			
+			int run = 0;
+			while (ends[run] <= n) run++;
+			
+			int first = run > 0 ? ends[run - 1] : 0;
+			return offsets[run] + (n - first) * RECORD_SIZE;
+		}
+	}
+	
+	private PuzzleBank(MappedByteBuffer buffer) throws IOException {
+		this.buffer = buffer;
+		
+		int runs = buffer.getInt(RUNS);
+		long offset = HEADER_SIZE;
+		for (int run=0; run<runs; run++) {
+			int difficulty = buffer.getInt(RUNS + 4 + run * 8);
+			int count = buffer.getInt(RUNS + 8 + run * 8);
+			
+			if (count < 0 || offset + (long) count * RECORD_SIZE
+					> buffer.capacity()) {
+				throw new IOException("Puzzle bank is cut short");
+			}
+			
+			Level level = levels.get(difficulty);
+			if (level == null) {
+				level = new Level();
+				levels.put(difficulty, level);
+			}
+			level.add((int) offset, count);
+			offset += (long) count * RECORD_SIZE;
+		}
+	}
+	
+	/**
+	 * Opens a bank for reading.
+	 * 
+	 * @param file The bank file
+	 * @return The bank, or null if the file doesn't exist
+	 * @throws IOException If the file can't be read or isn't a bank
+	 */
+	public static PuzzleBank open(File file) throws IOException {
+		if (!file.exists()) return null;
+		
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			MappedByteBuffer buffer = channel.map(
+					FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			checkHeader(buffer);
+			
+			return new PuzzleBank(buffer);
+		} finally {
+			raf.close();
+		}
+	}
+	
+	/**
+	 * @param difficulty The difficulty level
+	 * @return Number of games in the bank with that level
+	 */
+	public int size(int difficulty) {
+		Level level = levels.get(difficulty);
+		return level != null ? level.size : 0;
+	}
+	
+	/**
+	 * Picks a random game.
+	 * 
+	 * @param difficulty The difficulty level
+	 * @param random The random generator to use
+	 * @return The game board, or null if there are none with that level
+	 */
+	public int[][] randomGame(int difficulty, Random random) {
+		int size = size(difficulty);
+		if (size == 0) return null;
+		
+		Grid puzzle = new Grid();
+		puzzle.readPacked(buffer, offset(difficulty, random.nextInt(size))
+				+ PUZZLE);
+		return puzzle.toArray();
+	}
+	
+	/**
+	 * Fetches a game's puzzle.
+	 * 
+	 * @param difficulty The difficulty level
+	 * @param n The game's number within that level
+	 * @param puzzle Grid to read the puzzle into
+	 */
+	public void getPuzzle(int difficulty, int n, Grid puzzle) {
+		puzzle.readPacked(buffer, offset(difficulty, n) + PUZZLE);
+	}
+	
+	/**
+	 * Fetches a game's solution.
+	 * 
+	 * @param difficulty The difficulty level
+	 * @param n The game's number within that level
+	 * @param solution Grid to read the solution into
+	 */
+	public void getSolution(int difficulty, int n, Grid solution) {
+		solution.readPacked(buffer, offset(difficulty, n) + SOLUTION);
+	}
+	
+	/**
+	 * Fetches a game's rating.
+	 * 
+	 * @param difficulty The difficulty level
+	 * @param n The game's number within that level
+	 * @return The rating, higher is harder
+	 */
+	public int getRating(int difficulty, int n) {
+		return buffer.getShort(offset(difficulty, n) + RATING);
+	}
+	
+	/**
+	 * Generates games and appends them to a bank as a new run, creating
+	 * the file if needed. Games for the level of the last run are added
+	 * to that run instead.
+	 * 
+	 * @param file The bank file
+	 * @param difficulty The difficulty level
+	 * @param count Number of games to add
+	 * @param random The random generator to use
+	 * @throws IOException If the file can't be written or isn't a bank,
+	 *		or has no room for another run
+	 */
+	public static void append(File file, int difficulty, int count,
+			Random random) throws IOException {
+		
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			FileChannel channel = raf.getChannel();
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			
+			if (channel.size() == 0) {
+				header.putInt(MAGIC).putInt(VERSION).putInt(RECORD_SIZE);
+				header.clear();
+				while (header.hasRemaining()) {
+					channel.write(header, header.position());
+				}
+				header.clear();
+			} else {
+				while (header.hasRemaining()) {
+					if (channel.read(header, header.position()) < 0) break;
+				}
+				header.flip();
+				checkHeader(header);
+			}
+			
+			int runs = header.getInt(RUNS);
+			long position = HEADER_SIZE;
+			for (int run=0; run<runs; run++) {
+				position += (long) header.getInt(RUNS + 8 + run * 8)
+						* RECORD_SIZE;
+			}
+			
+			// A new level starts a run of its own
+			int last = RUNS + 4 + (runs - 1) * 8;
+			if (runs == 0 || header.getInt(last) != difficulty) {
+				if (runs == MAX_RUNS) {
+					throw new IOException("No room for more runs in bank");
+				}
+				last += 8;
+				header.putInt(RUNS, ++runs);
+				header.putInt(last, difficulty);
+				header.putInt(last + 4, 0);
+			}
+			
+			// Anything after the last run is left from an append that
+			// didn't finish, and is written over
+			
+			ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+			DifficultyRater rater = new DifficultyRater();
+			
+			for (int i=0; i<count; i++) {
+				Grid puzzle = SudokuFactory.createPuzzle(difficulty, random);
+				Grid solution = SudokuFactory.finishGame(puzzle);
+				
+				record.clear();
+				record.put(DIFFICULTY, (byte) difficulty);
+				record.put(CLUES, (byte) puzzle.getFilled());
+				record.putShort(RATING, (short) rater.rate(puzzle));
+				puzzle.writePacked(record, PUZZLE);
+				solution.writePacked(record, SOLUTION);
+				
+				while (record.hasRemaining()) {
+					position += channel.write(record, position);
+				}
+			}
+			channel.force(false);
+			
+			// The games count once the records are on disk
+			header.putInt(last + 4, header.getInt(last + 4) + count);
+			header.clear();
+			while (header.hasRemaining()) {
+				channel.write(header, header.position());
+			}
+			channel.force(false);
+		} finally {
+			raf.close();
+		}
+	}
+	
+	private static void checkHeader(ByteBuffer buffer) throws IOException {
+		if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC
+				|| buffer.getInt(4) != VERSION
+				|| buffer.getInt(8) != RECORD_SIZE
+				|| buffer.getInt(RUNS) < 0 || buffer.getInt(RUNS) > MAX_RUNS) {
+			throw new IOException("Not a puzzle bank");
+		}
+	}
+	
+	private int offset(int difficulty, int n) {
+		Level level = levels.get(difficulty);
+		if (level == null) {
+			throw new IndexOutOfBoundsException("No game " + n);
+		}
+		return level.offset(n);
+	}
+	
+	public static void main(String[] args) throws IOException {
+		if (args.length != 4) {
+			System.err.println("Usage: PuzzleBank <file> <easy> <medium> <hard>");
+			System.exit(1);
+		}
+		
+		File file = new File(args[0]);
+		Random random = new Random();
+		int[] levels = {SudokuFactory.EASY, SudokuFactory.MEDIUM,
+				SudokuFactory.HARD};
+		
+		for (int i=0; i<levels.length; i++) {
+			int count = Integer.parseInt(args[i + 1]);
+			long start = System.currentTimeMillis();
+			
+			append(file, levels[i], count, random);
+			
+			System.out.println("Added " + count + " games with difficulty "
+					+ levels[i] + " in "
+					+ (System.currentTimeMillis() - start) + " ms");
+		}
+		
+		PuzzleBank bank = open(file);
+		for (int level : levels) {
+			System.out.println(level + ": " + bank.size(level) + " games");
+		}
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Vegard Løkken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package no.vtek.sudoku;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps a few ready made games for each difficulty level, generated on
+ * background threads, so that starting a new game doesn't have to wait
+ * for the generator. Levels found in the puzzle bank are served
+ * straight from it instead.
+ * 
+ * @author Vegard Løkken
+ * @version 0.25
+ */
+class PuzzlePool {
+	private static final int CAPACITY = 3;
+	
+	private final ExecutorService executor;
+	private final PuzzleBank bank;
+	private final Random random = new Random();
+	private final Map<Integer, BlockingQueue<int[][]>> queues =
+			new HashMap<Integer, BlockingQueue<int[][]>>();
+	private final Map<Integer, AtomicInteger> pending =
+			new HashMap<Integer, AtomicInteger>();
+	
+	/**
+	 * Creates the pool and starts filling it.
+	 * 
+	 * @param bank Puzzle bank to serve games from, or null
+	 * @param difficulties The difficulty levels to keep games for
+	 */
+	public PuzzlePool(PuzzleBank bank, int... difficulties) {
+		this.bank = bank;
+		
+		int threads = Math.max(1,
+				Runtime.getRuntime().availableProcessors() - 1);
+		
+		executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "PuzzlePool");
+				thread.setDaemon(true);
+				thread.setPriority(Thread.MIN_PRIORITY);
+				return thread;
+			}
+		});
+		
+		for (int difficulty : difficulties) {
+			if (bank != null && bank.size(difficulty) > 0) continue;
+			
+			queues.put(difficulty, new ArrayBlockingQueue<int[][]>(CAPACITY));
+			pending.put(difficulty, new AtomicInteger());
+			refill(difficulty);
+		}
+	}
+	
+	/**
+	 * Hands over a ready made game and starts generating a new one
+	 * in its place.
+	 * 
+	 * @param difficulty The difficulty level
+	 * @return The game, or null if none are ready
+	 */
+	public int[][] poll(int difficulty) {
+		if (bank != null && bank.size(difficulty) > 0) {
+			synchronized (random) {
+				return bank.randomGame(difficulty, random);
+			}
+		}
+		
+		BlockingQueue<int[][]> queue = queues.get(difficulty);
+		if (queue == null) return null;
+		
+		int[][] game = queue.poll();
+		refill(difficulty);
+		
+		return game;
+	}
+	
+	private void refill(final int difficulty) {
+		final BlockingQueue<int[][]> queue = queues.get(difficulty);
+		final AtomicInteger inProgress = pending.get(difficulty);
+		
+		while (queue.size() + inProgress.incrementAndGet() <= CAPACITY) {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						queue.offer(SudokuFactory.createGame(difficulty));
+					} finally {
+						inProgress.decrementAndGet();
+					}
+				}
+			});
+		}
+		inProgress.decrementAndGet();
+	}
+}
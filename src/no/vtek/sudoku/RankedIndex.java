@@ -0,0 +1,190 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Vegard Løkken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package no.vtek.sudoku;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Scores of one difficulty level ordered by time, best first.
+ * 
+ * The scores are kept in a treap where each node knows the size of its
+ * subtree, so adding a score, finding the rank of a time and finding
+ * the score at a rank all take O(log n). Equal times are ranked in the
+ * order they were added.
+ * 
+ * @author Vegard Løkken
+ * @version 0.25
+ */
+class RankedIndex {
+	private final Random random = new Random();
+	private Node root = null;
+	private long sequence = 0;
+	
+	private static class Node {
+		final HighscoreItem item;
+		final long time;
+		final long sequence;
+		final int priority;
+		int size = 1;
+		Node left;
+		Node right;
+		
+		Node(HighscoreItem item, long sequence, int priority) {
+			this.item = item;
+			this.time = item.getTimeMillis();
+			this.sequence = sequence;
+			this.priority = priority;
+		}
+		
+		boolean before(Node other) {
+			return time < other.time
+					|| (time == other.time && sequence < other.sequence);
+		}
+	}
+	
+	/**
+	 * Adds a score.
+	 * 
+	 * @param item The score
+	 * @return Its rank, starting at 1
+	 */
+	public synchronized int add(HighscoreItem item) {
+		Node node = new Node(item, sequence++, random.nextInt());
+		root = insert(root, node);
+		
+		return rankOf(node);
+	}
+	
+	/**
+	 * @param time A time in milliseconds
+	 * @return The rank a score with this time would get, starting at 1
+	 */
+	public synchronized int rank(long time) {
+		int better = 0;
+		
+		// Equal times are ranked after the ones already there
+		for (Node node = root; node != null; ) {
+			if (node.time <= time) {
+				better += size(node.left) + 1;
+				node = node.right;
+			} else {
+				node = node.left;
+			}
+		}
+		
+		return better + 1;
+	}
+	
+	/**
+	 * @param offset Number of scores to skip
+	 * @param count Largest number of scores to return
+	 * @return The scores, best first
+	 */
+	public synchronized List<HighscoreItem> get(int offset, int count) {
+		List<HighscoreItem> items = new ArrayList<HighscoreItem>();
+		collect(root, Math.max(0, offset), count, items);
+		
+		return items;
+	}
+	
+	public synchronized int size() {
+		return size(root);
+	}
+	
+	private int rankOf(Node target) {
+		int better = 0;
+		
+		for (Node node = root; node != target; ) {
+			if (node.before(target)) {
+				better += size(node.left) + 1;
+				node = node.right;
+			} else {
+				node = node.left;
+			}
+		}
+		
+		return better + size(target.left) + 1;
+	}
+	
+	/**
+	 * Adds the items from the given position of a subtree in order,
+	 * skipping the subtrees that lie entirely before it.
+	 */
+	private static void collect(Node node, int skip, int count,
+			List<HighscoreItem> items) {
+		
+		if (node == null || count <= items.size()) return;
+		
+		int left = size(node.left);
+		
+		if (skip < left) collect(node.left, skip, count, items);
+		
+		if (skip <= left && items.size() < count) items.add(node.item);
+		
+		collect(node.right, Math.max(0, skip - left - 1), count, items);
+	}
+	
+	private static Node insert(Node node, Node inserted) {
+		if (node == null) return inserted;
+		
+		node.size++;
+		
+		if (inserted.before(node)) {
+			node.left = insert(node.left, inserted);
+			if (node.left.priority > node.priority) node = rotateRight(node);
+		} else {
+			node.right = insert(node.right, inserted);
+			if (node.right.priority > node.priority) node = rotateLeft(node);
+		}
+		
+		return node;
+	}
+	
+	private static Node rotateRight(Node node) {
+		Node left = node.left;
+		node.left = left.right;
+		left.right = node;
+		left.size = node.size;
+		node.size = size(node.left) + size(node.right) + 1;
+		
+		return left;
+	}
+	
+	private static Node rotateLeft(Node node) {
+		Node right = node.right;
+		node.right = right.left;
+		right.left = node;
+		right.size = node.size;
+		node.size = size(node.left) + size(node.right) + 1;
+		
+		return right;
+	}
+	
+	private static int size(Node node) {
+		return node == null ? 0 : node.size;
+	}
+}
@@ -0,0 +1,307 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Vegard Løkken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package no.vtek.sudoku;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * A game in progress, as written to the save file.
+ * 
+ * The file is 264 bytes: a magic number, the format version, the
+ * difficulty level, the assistance settings and the time spent in
+ * milliseconds, then the given board and the current board with two
+ * cells per byte, the notes of each cell as a short, and last a
+ * checksum of it all. A file of another size or whose checksum doesn't
+ * match is ignored, and so is one whose current board has lost a given
+ * number or whose notes hold more than the numbers 1 - 9.
+ * 
+ * A save is written to a temporary file first. Where it can't be renamed
+ * onto the old save, the old one is removed first, so if the save file
+ * is missing or can't be used the temporary file is read instead.
+ * 
+ * @author Vegard Løkken
+ * @version 0.25
+ */
+final class SavedGame {
+	private static final int MAGIC = 0x53444B53; // "SDKS"
+	private static final int VERSION = 2;
+	private static final int BOARD_SIZE = (Topology.CELLS + 1) / 2;
+	private static final int ORIGINAL = 16;
+	private static final int GAME = ORIGINAL + BOARD_SIZE;
+	private static final int NOTES = GAME + BOARD_SIZE;
+	private static final int CHECKSUM = NOTES + 2 * Topology.CELLS;
+	static final int SIZE = CHECKSUM + 4;
+	
+	private static final int LINE_ASSISTANCE = 1;
+	private static final int NUMBER_ASSISTANCE = 2;
+	private static final int REDO = 4;
+	private static final int HINTS = 8;
+	private static final int AUTO_NOTES = 16;
+	
+	private final byte[] data;
+	
+	private SavedGame(byte[] data) {
+		this.data = data;
+	}
+	
+	/**
+	 * Captures a game. The boards are copied, so they can be changed
+	 * afterwards.
+	 * 
+	 * @param difficulty The difficulty level
+	 * @param original The given board
+	 * @param game The current board
+	 * @param notes The notes
+	 * @param time Time spent in milliseconds
+	 * @param lineAssistance Line assistance setting
+	 * @param numberAssistance Number assistance setting
+	 * @param hints Whether hints are shown
+	 * @param autoNotes Whether placed numbers are removed from the notes
+	 * @param redo Whether filled in cells can be changed
+	 */
+	SavedGame(int difficulty, int[][] original, int[][] game, Notes notes,
+			long time, boolean lineAssistance, boolean numberAssistance,
+			boolean hints, boolean autoNotes, boolean redo) {
+		data = new byte[SIZE];
+		ByteBuffer buffer = ByteBuffer.wrap(data);
+		
+		int flags = (lineAssistance ? LINE_ASSISTANCE : 0)
+				| (numberAssistance ? NUMBER_ASSISTANCE : 0)
+				| (hints ? HINTS : 0)
+				| (autoNotes ? AUTO_NOTES : 0)
+				| (redo ? REDO : 0);
+		
+		buffer.putInt(MAGIC);
+		buffer.put((byte) VERSION);
+		buffer.put((byte) difficulty);
+		buffer.put((byte) flags);
+		buffer.put((byte) 0);
+		buffer.putLong(time);
+		pack(original, buffer, ORIGINAL);
+		pack(game, buffer, GAME);
+		for (int cell=0; cell<Topology.CELLS; cell++) {
+			buffer.putShort(NOTES + 2 * cell, (short) notes.get(cell));
+		}
+		buffer.putInt(CHECKSUM, checksum(data));
+	}
+	
+	/**
+	 * Reads a saved game.
+	 * 
+	 * @param file The save file
+	 * @return The game, or null if there is none or it can't be used
+	 */
+	static SavedGame read(File file) {
+		SavedGame saved = readFile(file);
+		
+		// Left alone if the game closed between removing and renaming
+		if (saved == null) saved = readFile(temp(file));
+		
+		return saved;
+	}
+	
+	/**
+	 * Removes a save file, and any temporary file left with it.
+	 * 
+	 * @param file The save file
+	 * @return False if a file couldn't be removed
+	 */
+	static boolean delete(File file) {
+		File temp = temp(file);
+		boolean deleted = !file.exists() || file.delete();
+		
+		return (!temp.exists() || temp.delete()) && deleted;
+	}
+	
+	private static SavedGame readFile(File file) {
+		if (file.length() != SIZE) return null;
+		
+		byte[] data = new byte[SIZE];
+		try {
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try {
+				raf.readFully(data);
+			} finally {
+				raf.close();
+			}
+		} catch (IOException e) {
+			return null;
+		}
+		
+		ByteBuffer buffer = ByteBuffer.wrap(data);
+		if (buffer.getInt(0) != MAGIC || buffer.get(4) != VERSION
+				|| buffer.getInt(CHECKSUM) != checksum(data)) {
+			return null;
+		}
+		
+		SavedGame saved = new SavedGame(data);
+		int difficulty = saved.getDifficulty();
+		if (difficulty != SudokuFactory.EASY
+				&& difficulty != SudokuFactory.MEDIUM
+				&& difficulty != SudokuFactory.HARD
+				|| saved.getTime() < 0 || !saved.isValid()) {
+			return null;
+		}
+		return saved;
+	}
+	
+	/**
+	 * @return True if the boards can be read, the current one keeps the
+	 *		given numbers, and the notes only hold numbers 1 - 9
+	 */
+	private boolean isValid() {
+		int[][] original = getOriginal();
+		int[][] game = getGame();
+		if (original == null || game == null) return false;
+		
+		ByteBuffer buffer = ByteBuffer.wrap(data);
+		for (int cell=0; cell<Topology.CELLS; cell++) {
+			int row = Topology.row(cell), col = Topology.col(cell);
+			if (original[row][col] != 0
+					&& game[row][col] != original[row][col]) {
+				return false;
+			}
+			
+			int mask = buffer.getShort(NOTES + 2 * cell) & 0xFFFF;
+			if ((mask & ~Grid.ALL) != 0) return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Writes the game to a temporary file next to the save file and then
+	 * moves it in place, so the save file is never half written.
+	 * 
+	 * @param file The save file
+	 * @throws IOException If the file couldn't be written
+	 */
+	void write(File file) throws IOException {
+		File temp = temp(file);
+		FileOutputStream out = new FileOutputStream(temp);
+		try {
+			out.write(data);
+			out.getFD().sync();
+		} finally {
+			out.close();
+		}
+		
+		// Windows won't rename onto an existing file
+		if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file))) {
+			throw new IOException("Couldn't replace " + file);
+		}
+	}
+	
+	int getDifficulty() {
+		return data[5];
+	}
+	
+	/**
+	 * @return Time spent in milliseconds
+	 */
+	long getTime() {
+		return ByteBuffer.wrap(data).getLong(8);
+	}
+	
+	boolean getLineAssistance() {
+		return (data[6] & LINE_ASSISTANCE) != 0;
+	}
+	
+	boolean getNumberAssistance() {
+		return (data[6] & NUMBER_ASSISTANCE) != 0;
+	}
+	
+	boolean getHints() {
+		return (data[6] & HINTS) != 0;
+	}
+	
+	boolean getAutoNotes() {
+		return (data[6] & AUTO_NOTES) != 0;
+	}
+	
+	boolean getRedo() {
+		return (data[6] & REDO) != 0;
+	}
+	
+	/**
+	 * @return A new copy of the given board, or null if it is damaged
+	 */
+	int[][] getOriginal() {
+		return unpack(ORIGINAL);
+	}
+	
+	/**
+	 * @return A new copy of the current board, or null if it is damaged
+	 */
+	int[][] getGame() {
+		return unpack(GAME);
+	}
+	
+	/**
+	 * @return A new copy of the notes
+	 */
+	Notes getNotes() {
+		ByteBuffer buffer = ByteBuffer.wrap(data);
+		Notes notes = new Notes();
+		for (int cell=0; cell<Topology.CELLS; cell++) {
+			notes.set(cell, buffer.getShort(NOTES + 2 * cell));
+		}
+		return notes;
+	}
+	
+	private static void pack(int[][] game, ByteBuffer buffer, int offset) {
+		for (int cell=0; cell<Topology.CELLS; cell+=2) {
+			int high = game[Topology.row(cell)][Topology.col(cell)];
+			int low = cell + 1 < Topology.CELLS
+					? game[Topology.row(cell + 1)][Topology.col(cell + 1)] : 0;
+			buffer.put(offset + cell / 2, (byte) (high << 4 | low));
+		}
+	}
+	
+	private int[][] unpack(int offset) {
+		int[][] game = new int[Topology.SIZE][Topology.SIZE];
+		for (int cell=0; cell<Topology.CELLS; cell++) {
+			int b = data[offset + cell / 2];
+			int num = (cell % 2 == 0 ? b >> 4 : b) & 0xF;
+			if (num > Topology.SIZE) return null;
+			game[Topology.row(cell)][Topology.col(cell)] = num;
+		}
+		return game;
+	}
+	
+	private static File temp(File file) {
+		return new File(file.getPath() + ".tmp");
+	}
+	
+	private static int checksum(byte[] data) {
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, CHECKSUM);
+		return (int) crc.getValue();
+	}
+}
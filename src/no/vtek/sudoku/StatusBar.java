@@ -26,8 +26,12 @@ package no.vtek.sudoku;
 
 import java.awt.BorderLayout;
 import java.awt.Color;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.JProgressBar;
+import javax.swing.Timer;
 
 /**
  * The sudoku game's status bar
@@ -40,7 +44,17 @@ class StatusBar extends JPanel {
 	private SudokuGame frame;
 	private JLabel statusText = new JLabel("Welcome to Sudoku");
 	private JLabel time = new JLabel("Time: 0 ");
-	private TimeThread thread = null;
+	private JProgressBar progress = new JProgressBar();
+	private GameClock clock = new GameClock();
+	
+	/* Updates the time once a second on the event dispatch thread,
+	 * and only while the clock is ticking */
+	private Timer ticker = new Timer(1000, new ActionListener() {
+		@Override
+		public void actionPerformed(ActionEvent e) {
+			updateTime();
+		}
+	});
 
 	public StatusBar(SudokuGame frame) {
 		this.frame = frame;
@@ -52,61 +66,73 @@ class StatusBar extends JPanel {
 
 		add(statusText, BorderLayout.WEST);
 		add(time, BorderLayout.EAST);
+		
+		progress.setVisible(false);
+		add(progress, BorderLayout.CENTER);
+		
+		ticker.setCoalesce(true);
 	}
 
 	public void setStatus(String status) {
 		statusText.setText(status);
 	}
+	
+	/**
+	 * Shows or hides the progress indicator used while a game is
+	 * being generated.
+	 * 
+	 * @param busy True to show it
+	 */
+	public void setBusy(boolean busy) {
+		progress.setIndeterminate(busy);
+		progress.setVisible(busy);
+		setStatus(busy ? "Generating puzzle... " : null);
+	}
 
 	public void startTime() {
-		if (thread != null && thread.running) stopTime();
-		
-		thread = new TimeThread();
-		thread.start();
+		startTime(0);
+	}
+
+	/**
+	 * @param elapsed Time already spent on the game in milliseconds
+	 */
+	public void startTime(long elapsed) {
+		clock.start(elapsed);
+		updateTime();
+		startTicker();
 	}
 
 	public void stopTime() {
-		thread.running = false;
+		clock.stop();
+		ticker.stop();
+		updateTime();
 	}
 
 	public void pauseTime() {
-		thread.pause = true;
+		clock.pause();
+		ticker.stop();
 	}
 
 	public void resumeTime() {
-		thread.pause = false;
+		clock.resume();
+		if (clock.isTicking()) startTicker();
 	}
 
+	/**
+	 * @return Time spent on the game in milliseconds
+	 */
 	public int getTime() {
-		return thread.timeCount;
+		return (int) clock.getElapsedMillis();
 	}
-
-	private class TimeThread extends Thread {
-		private boolean running = true;
-		private boolean pause = false;
-		private int timeCount = 0;
-		private long last;
-
-		@Override
-		public void run() {
-			last = System.currentTimeMillis();
-			
-			while (running) {
-				long now = System.currentTimeMillis();
-				long diff = now - last;
-				
-				last = now;
-					
-				if (!pause) {
-					timeCount += diff;
-					time.setText("Time: " + timeCount/1000 + " ");
-				}
-
-				try {
-					Thread.sleep(50);
-				} catch (InterruptedException ex) {
-				}
-			}
-		}
+	
+	private void startTicker() {
+		
+		// First tick when the next whole second is reached
+		ticker.setInitialDelay((int) (1000 - clock.getElapsedMillis() % 1000));
+		ticker.restart();
+	}
+	
+	private void updateTime() {
+		time.setText("Time: " + clock.getElapsedMillis() / 1000 + " ");
 	}
 }
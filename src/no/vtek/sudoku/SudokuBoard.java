@@ -24,128 +24,387 @@
 
 package no.vtek.sudoku;
 
+import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.FlowLayout;
 import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
+import java.awt.event.MouseMotionListener;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
 import javax.swing.*;
 
 /**
  * The sudoku game board
  * 
+ * The board is a single component that paints the tiles itself. The
+ * tile size follows the component size, and the digits are laid out as
+ * glyphs once per size and reused on every paint. Changes repaint only
+ * the tiles affected.
+ * 
  * @author Vegard Løkken
  * @version 0.25
  */
-public class SudokuBoard extends JPanel implements MouseListener {
+public class SudokuBoard extends JPanel implements MouseListener,
+		MouseMotionListener {
+	
+	private static final Color NEIGHBOUR_COLOR = new Color(200, 225, 250);
+	private static final Color ACTIVE_COLOR = new Color(100, 150, 225);
+	private static final Color HINT_COLOR = new Color(140, 210, 140);
+	private static final Color SUPPORT_COLOR = new Color(215, 240, 195);
+	private static final Color LINE_COLOR = Color.gray;
+	private static final Color GIVEN_COLOR = Color.black;
+	private static final Color INPUT_COLOR = Color.red;
+	private static final Color NOTE_COLOR = Color.darkGray;
+	private static final Color NOTED_COLOR = new Color(255, 240, 160);
+	private static final BasicStroke THIN_LINE = new BasicStroke(1f);
+	private static final BasicStroke THICK_LINE = new BasicStroke(2f);
+	private static final int MARGIN = 5;
+	
 	private SudokuGame frame;
 	private int[][] game;
 	private int[][] gameOriginal;
 	private boolean[][] networkCheck;
-	private JLabel[][] tiles = new JLabel[9][9];
+	private MoveHistory history;
+	private HintEngine hints;
+	private HintEngine.Hint hint = null;
+	private Notes notes = new Notes();
+	
+	/* How many times each number is used in each row (0-8), column
+	 * (9-17) and box (18-26), so that completion and conflicts are
+	 * known without scanning the board */
+	private int[][] unitCounts = new int[Topology.UNITS][10];
+	private int filled = 0;
+	private int conflicts = 0;
 	private int chosenNumber = 0;
 	private NumberChooser numberChooserDialog = new NumberChooser();
-	JLabel activeTile = null;
+	private int activeCell = -1;
+	
+	/* Board geometry, updated when the size changes */
+	private int tileSize = 0;
+	private int originX, originY;
+	
+	/* Digit glyphs for the current tile size, index 1-9 */
+	private GlyphVector[] glyphs = new GlyphVector[10];
+	private float[] glyphX = new float[10];
+	private float[] glyphY = new float[10];
+	private FontRenderContext glyphContext;
+	
+	/* Smaller glyphs for notes, placed in a 3 x 3 layout in the tile */
+	private GlyphVector[] noteGlyphs = new GlyphVector[10];
+	private float[] noteX = new float[10];
+	private float[] noteY = new float[10];
 
 	public SudokuBoard(SudokuGame frame, int[][] game) {
+		this(frame, game, copy(game));
+	}
+	
+	/**
+	 * Creates a board for a game that has already been played on.
+	 * 
+	 * @param frame The game window
+	 * @param game The current board, changed as the game is played
+	 * @param gameOriginal The given numbers, telling which tiles are
+	 *		editable
+	 */
+	public SudokuBoard(SudokuGame frame, int[][] game, int[][] gameOriginal) {
 		this.frame = frame;
 		this.game = game;
+		this.gameOriginal = gameOriginal;
 		
-		/* Making a copy of the original so that we can remember which
-		 * fields are editable */
-		gameOriginal = new int[game.length][game[0].length];
-		for (int i=0; i<game.length; i++) {
-			for (int j=0; j<game[0].length; j++) {
-				gameOriginal[i][j] = game[i][j];
+		networkCheck = new boolean[game.length][game[0].length];
+		
+		/* The numbers already filled in of a resumed game are kept as
+		 * moves, so that undo puts back what was there and retry starts
+		 * from the given numbers */
+		history = new MoveHistory(gameOriginal);
+		for (int cell=0; cell<Topology.CELLS; cell++) {
+			int x = Topology.col(cell), y = Topology.row(cell);
+			if (game[y][x] != gameOriginal[y][x]) {
+				history.record(cell, gameOriginal[y][x], game[y][x]);
 			}
 		}
+		hints = new HintEngine(game);
 		
-		networkCheck = new boolean[game.length][game[0].length];
+		countBoard();
 		
 		setPreferredSize(new Dimension(500, 500));
-		setLayout(null);
-		
+		setBackground(Color.white);
+		setOpaque(true);
+		addMouseListener(this);
+		addMouseMotionListener(this);
+	}
+	
+	/* Making a copy of the original so that we can remember which
+	 * fields are editable */
+	private static int[][] copy(int[][] game) {
+		int[][] copy = new int[game.length][game[0].length];
 		for (int i=0; i<game.length; i++) {
 			for (int j=0; j<game[0].length; j++) {
-				tiles[i][j] = new JLabel();
-				tiles[i][j].setBackground(Color.white);
-				tiles[i][j].setOpaque(true);
-				tiles[i][j].addMouseListener(this);
-				tiles[i][j].setFont(new Font("Arial", Font.BOLD, 18));
-				
-				if (game[i][j] != 0) {
-					tiles[i][j].setText(new Integer(game[i][j]).toString());
-				} else {
-					//tiles[i][j].setText("?");
-					tiles[i][j].setForeground(Color.red);
-					//tiles[i][j].setToolTipText("Click to change");
-				}
-				
-				tiles[i][j].setHorizontalAlignment(SwingConstants.CENTER);
-				tiles[i][j].setBorder(
-						BorderFactory.createLineBorder(Color.black));
-				tiles[i][j].setBounds(j*(50+5)+5, i*(50+5)+5, 50, 50);
-				add(tiles[i][j]);
+				copy[i][j] = game[i][j];
 			}
 		}
+		return copy;
+	}
+	
+	/**
+	 * @return The given numbers, not to be changed
+	 */
+	int[][] getOriginal() {
+		return gameOriginal;
+	}
+	
+	private void updateGeometry(Graphics2D g) {
+		int size = Math.min(getWidth(), getHeight()) - 2 * MARGIN;
+		int newTileSize = Math.max(1, size / Topology.SIZE);
 		
-		JPanel squareFrame;
-		for (int i=2; i<497; i+=165) {
-			for (int j=2; j<497; j+=165) {
-				squareFrame = new JPanel();
-				squareFrame.setBounds(j, i, 166, 166);
-				squareFrame.setBorder(BorderFactory.createLineBorder(Color.black, 2));
-				add(squareFrame);
+		originX = (getWidth() - newTileSize * Topology.SIZE) / 2;
+		originY = (getHeight() - newTileSize * Topology.SIZE) / 2;
+		
+		FontRenderContext context = g.getFontRenderContext();
+		if (newTileSize != tileSize || !context.equals(glyphContext)) {
+			tileSize = newTileSize;
+			glyphContext = context;
+			
+			Font font = new Font("Arial", Font.BOLD,
+					Math.max(1, tileSize * 9 / 25));
+			
+			for (int num=1; num<=Topology.SIZE; num++) {
+				glyphs[num] = font.createGlyphVector(context, "" + num);
+				Rectangle2D bounds = glyphs[num].getVisualBounds();
+				glyphX[num] = (float) ((tileSize - bounds.getWidth()) / 2
+						- bounds.getX());
+				glyphY[num] = (float) ((tileSize - bounds.getHeight()) / 2
+						- bounds.getY());
+			}
+			
+			Font noteFont = new Font("Arial", Font.PLAIN,
+					Math.max(1, tileSize * 6 / 25));
+			float third = tileSize / 3f;
+			
+			for (int num=1; num<=Topology.SIZE; num++) {
+				noteGlyphs[num] = noteFont.createGlyphVector(context, "" + num);
+				Rectangle2D bounds = noteGlyphs[num].getVisualBounds();
+				noteX[num] = (float) ((num - 1) % 3 * third
+						+ (third - bounds.getWidth()) / 2 - bounds.getX());
+				noteY[num] = (float) ((num - 1) / 3 * third
+						+ (third - bounds.getHeight()) / 2 - bounds.getY());
 			}
 		}
-		
 	}
 	
-	private int[] findIndex(JLabel button) {
-		int[] ret = new int[]{-1, -1};
+	@Override
+	protected void paintComponent(Graphics graphics) {
+		super.paintComponent(graphics);
+		
+		Graphics2D g = (Graphics2D) graphics;
+		g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+				RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+				RenderingHints.VALUE_ANTIALIAS_ON);
+		updateGeometry(g);
+		
+		Rectangle clip = g.getClipBounds();
+		if (clip == null) clip = new Rectangle(0, 0, getWidth(), getHeight());
 		
-		for (int i=0; i<tiles.length; i++) {
-			for (int j=0; j<tiles[0].length; j++) {
-				if (tiles[i][j] == button) {
-					ret = new int[]{j, i};
+		// Tiles within the dirty area
+		for (int cell=0; cell<Topology.CELLS; cell++) {
+			int x = originX + Topology.col(cell) * tileSize;
+			int y = originY + Topology.row(cell) * tileSize;
+			if (!clip.intersects(x, y, tileSize, tileSize)) continue;
+			
+			Color background = getTileColor(cell);
+			if (background != null) {
+				g.setColor(background);
+				g.fillRect(x, y, tileSize, tileSize);
+			}
+			
+			int row = Topology.row(cell), col = Topology.col(cell);
+			int num = game[row][col];
+			if (num != 0) {
+				g.setColor(gameOriginal[row][col] != 0
+						? GIVEN_COLOR : INPUT_COLOR);
+				g.drawGlyphVector(glyphs[num], x + glyphX[num], y + glyphY[num]);
+			} else if (notes.get(cell) != 0) {
+				g.setColor(NOTE_COLOR);
+				for (int mask=notes.get(cell); mask!=0; mask&=mask-1) {
+					int note = Grid.firstNumber(mask);
+					g.drawGlyphVector(noteGlyphs[note],
+							x + noteX[note], y + noteY[note]);
 				}
 			}
 		}
 		
-		return ret;
+		// Lines, thicker around the squares
+		int length = tileSize * Topology.SIZE;
+		for (int i=0; i<=Topology.SIZE; i++) {
+			int offset = i * tileSize;
+			boolean thick = i % 3 == 0;
+			
+			g.setColor(thick ? Color.black : LINE_COLOR);
+			g.setStroke(thick ? THICK_LINE : THIN_LINE);
+			g.drawLine(originX + offset, originY,
+					originX + offset, originY + length);
+			g.drawLine(originX, originY + offset,
+					originX + length, originY + offset);
+		}
+	}
+	
+	/**
+	 * @return The highlight color of a tile, or null for none
+	 */
+	private Color getTileColor(int cell) {
+		if (cell == activeCell) return ACTIVE_COLOR;
+		
+		if (hint != null) {
+			if (cell == hint.getCell()) return HINT_COLOR;
+			if (hint.isSupporting(cell)) return SUPPORT_COLOR;
+		}
+		
+		if (activeCell >= 0 && (Topology.row(cell) == Topology.row(activeCell)
+				|| Topology.col(cell) == Topology.col(activeCell)
+				|| Topology.box(cell) == Topology.box(activeCell))) {
+			return NEIGHBOUR_COLOR;
+		}
+		return null;
+	}
+	
+	/**
+	 * Repaints one tile.
+	 */
+	private void repaintCell(int cell) {
+		repaint(originX + Topology.col(cell) * tileSize - 1,
+				originY + Topology.row(cell) * tileSize - 1,
+				tileSize + 2, tileSize + 2);
+	}
+	
+	/**
+	 * Repaints a tile together with its row, column and square.
+	 */
+	private void repaintLines(int cell) {
+		int length = tileSize * Topology.SIZE;
+		int x = originX + Topology.col(cell) * tileSize;
+		int y = originY + Topology.row(cell) * tileSize;
+		int boxX = originX + Topology.col(cell) / 3 * 3 * tileSize;
+		int boxY = originY + Topology.row(cell) / 3 * 3 * tileSize;
+		
+		repaint(originX - 1, y - 1, length + 2, tileSize + 2);
+		repaint(x - 1, originY - 1, tileSize + 2, length + 2);
+		repaint(boxX - 1, boxY - 1, 3 * tileSize + 2, 3 * tileSize + 2);
+	}
+	
+	private void setActiveCell(int cell) {
+		if (cell == activeCell) return;
+		
+		if (activeCell >= 0) repaintLines(activeCell);
+		activeCell = frame.lineAssistance ? cell : -1;
+		if (activeCell >= 0) repaintLines(activeCell);
+	}
+	
+	/**
+	 * @return The cell under a point, or -1 if outside the board
+	 */
+	private int cellAt(Point point) {
+		if (tileSize == 0) return -1;
+		
+		int col = (point.x - originX) / tileSize;
+		int row = (point.y - originY) / tileSize;
+		
+		if (point.x < originX || point.y < originY
+				|| col >= Topology.SIZE || row >= Topology.SIZE) {
+			return -1;
+		}
+		return Topology.cell(row, col);
 	}
 	
 	private boolean boardCompleted() {
-		boolean completed = true;
+		return filled == game.length * game[0].length;
+	}
+	
+	/**
+	 * Recounts the numbers of the whole board. Only needed when the
+	 * board is replaced, single changes are counted by setNumber.
+	 */
+	private void countBoard() {
+		unitCounts = new int[Topology.UNITS][10];
+		filled = 0;
+		conflicts = 0;
 		
-		outer:
 		for (int i=0; i<game.length; i++) {
 			for (int j=0; j<game[0].length; j++) {
-				if (game[i][j] == 0) {
-					completed = false;
-					break outer;
-				}
+				count(j, i, game[i][j], 1);
 			}
 		}
+	}
+	
+	private void count(int x, int y, int num, int delta) {
+		if (num == 0) return;
+		
+		filled += delta;
+		
+		int cell = Topology.cell(y, x);
+		for (int n=0; n<3; n++) {
+			countUnit(Topology.unit(cell, n), num, delta);
+		}
+	}
+	
+	private void countUnit(int unit, int num, int delta) {
+		int before = unitCounts[unit][num];
+		unitCounts[unit][num] = before + delta;
 		
-		return completed;
+		if (delta > 0 && before > 0) conflicts++;
+		if (delta < 0 && before > 1) conflicts--;
+	}
+	
+	/**
+	 * Checks if a tile's number is also used elsewhere in its row,
+	 * column or box.
+	 * 
+	 * @param x Column position
+	 * @param y Row position
+	 * @return True if in conflict
+	 */
+	public boolean isConflicting(int x, int y) {
+		int num = game[y][x];
+		if (num == 0) return false;
+		
+		int cell = Topology.cell(y, x);
+		for (int n=0; n<3; n++) {
+			if (unitCounts[Topology.unit(cell, n)][num] > 1) return true;
+		}
+		return false;
 	}
 
 	@Override
 	public void mouseClicked(MouseEvent e) {
-		if (frame.inGame && e.getSource() instanceof JLabel) {
-			int[] index = findIndex((JLabel)e.getSource());
-
-			int x = index[0];
-			int y = index[1];
+		int cell = cellAt(e.getPoint());
+		
+		if (frame.inGame && cell >= 0) {
+			int x = Topology.col(cell);
+			int y = Topology.row(cell);
 
 			int clickedNumber = frame.redo ? gameOriginal[y][x] : game[y][x];
 
-			if (clickedNumber == 0) {
+			if (SwingUtilities.isRightMouseButton(e)) {
+				
+				// Notes are only shown in empty tiles
+				if (game[y][x] == 0) {
+					numberChooserDialog.showDialog(x, y, true);
+					
+					setNote(cell, chosenNumber);
+				}
+			} else if (clickedNumber == 0) {
 				
-					numberChooserDialog.showDialog(x, y);
+					numberChooserDialog.showDialog(x, y, false);
 					
 					setNumber(x, y, chosenNumber);
 			}
@@ -159,95 +418,206 @@ public class SudokuBoard extends JPanel implements MouseListener {
 	public void mouseReleased(MouseEvent e) {}
 
 	@Override
-	public void mouseEntered(MouseEvent e) {
-		if (frame.inGame && e.getSource() instanceof JLabel) {
-			
-			// Color those who are affected
-			if (frame.lineAssistance) {
-				activeTile = (JLabel) e.getSource();
-
-				for (JLabel tile : getNeighbours(activeTile)) {
-					tile.setBackground(new Color(200, 225, 250));
-				}
+	public void mouseEntered(MouseEvent e) {}
 
-				activeTile.setBackground(new Color(100, 150, 225));
-			}
-			
-			
-			int[] index = findIndex((JLabel)e.getSource());
-			int x = index[0];
-			int y = index[1];
-			if (gameOriginal[y][x] == 0) {
-				frame.statusBar.setStatus("Click to change");
-			}
-		}
+	@Override
+	public void mouseExited(MouseEvent e) {
+		setActiveCell(-1);
+		frame.statusBar.setStatus(null);
 	}
 
 	@Override
-	public void mouseExited(MouseEvent e) {
+	public void mouseDragged(MouseEvent e) {}
+
+	@Override
+	public void mouseMoved(MouseEvent e) {
+		int cell = frame.inGame ? cellAt(e.getPoint()) : -1;
+		if (cell == activeCell) return;
 		
-		for (int i=0; i<tiles.length; i++) {
-			for (int j=0; j<tiles[0].length; j++) {
-			tiles[i][j].setBackground(Color.white);
-			}
-		}
+		// Color those who are affected
+		setActiveCell(cell);
 		
-		frame.statusBar.setStatus(null);
+		if (cell >= 0 && gameOriginal[Topology.row(cell)][Topology.col(cell)] == 0) {
+			frame.statusBar.setStatus("Click to change, right click for notes");
+		} else {
+			frame.statusBar.setStatus(null);
+		}
 	}
 	
 	private void setNumber(int x, int y, int num) {
-		game[y][x] = num;
+		if (game[y][x] != num) {
+			int cell = Topology.cell(y, x);
+			int cleared = num > 0 && frame.autoNotes
+					? notes.eliminate(cell, num) : 0;
+			
+			history.record(cell, game[y][x], num, cleared);
+			placeNumber(x, y, num);
+			
+			if (cleared != 0) repaintLines(cell);
+			changed();
+		}
 
 		if (num > 0) {
 
-			tiles[y][x].setText(new Integer(num).toString());
-
-			/* Check for win */
-			if (boardCompleted()) {
-				if (SudokuFactory.checkValid(game)) {
-					frame.statusBar.stopTime();
-					frame.gameOver();
-
-				} else {
-					JOptionPane.showMessageDialog(frame,
-						"You have completed the board, but it " +
-						"doesn't seem to fulfill sudoku rules. " +
-						"Take one more look at it and try again.");
-				}
+			if (frame.numberAssistance && isConflicting(x, y)) {
+				frame.statusBar.setStatus("This number is already used "
+						+ "in the same row, column or square");
 			}
-		} else {
 
-			tiles[y][x].setText(null);
+			checkCompleted();
 		}
 	}
 	
-	private ArrayList<JLabel> getNeighbours(JLabel activeTile) {
-		ArrayList<JLabel> neighbours = new ArrayList<JLabel>();
+	/**
+	 * Adds or removes a note, or removes all notes of a tile.
+	 * 
+	 * @param cell The cell
+	 * @param num The number to note, 0 to remove all
+	 */
+	private void setNote(int cell, int num) {
+		if (num == 0) {
+			notes.clear(cell);
+		} else {
+			notes.toggle(cell, num);
+		}
+		repaintCell(cell);
+		frame.boardChanged();
+	}
+	
+	/**
+	 * @return The notes, not to be changed
+	 */
+	Notes getNotes() {
+		return notes;
+	}
+	
+	/**
+	 * Replaces the notes, used when a saved game is resumed.
+	 * 
+	 * @param notes The notes
+	 */
+	void setNotes(Notes notes) {
+		this.notes = notes;
+		repaint();
+	}
+	
+	private void placeNumber(int x, int y, int num) {
+		count(x, y, game[y][x], -1);
+		game[y][x] = num;
+		count(x, y, num, 1);
+		hints.set(Topology.cell(y, x), num);
+		repaintCell(Topology.cell(y, x));
+	}
+	
+	private void changed() {
+		updateHint();
+		frame.boardChanged();
+	}
+	
+	/**
+	 * Finds the hint to show for the board as it is now, if hints are
+	 * turned on.
+	 */
+	void updateHint() {
+		HintEngine.Hint next = frame.hints && frame.inGame
+				? hints.next() : null;
 		
-		int[] index = findIndex(activeTile);
-		int x = index[0], y = index[1];
+		boolean same = next == null ? hint == null : hint != null
+				&& next.getCell() == hint.getCell()
+				&& next.getNumber() == hint.getNumber();
+		hint = next;
 		
-		// Rows
-		for (int i=0; i<tiles.length; i++) {
-			neighbours.add(tiles[i][x]);
+		if (!same) {
+			repaint();
+			frame.statusBar.setStatus(hint != null
+					? "Hint: " + hint.getTechnique() : null);
+		}
+	}
+	
+	private void checkCompleted() {
+		if (boardCompleted()) {
+			if (conflicts == 0) {
+				frame.statusBar.stopTime();
+				frame.gameOver();
+
+			} else {
+				JOptionPane.showMessageDialog(frame,
+					"You have completed the board, but it " +
+					"doesn't seem to fulfill sudoku rules. " +
+					"Take one more look at it and try again.");
+			}
+		}
+	}
+	
+	public boolean canUndo() {
+		return frame.inGame && history.canUndo();
+	}
+	
+	public boolean canRedo() {
+		return frame.inGame && history.canRedo();
+	}
+	
+	public void undo() {
+		if (canUndo()) goToMove(history.getPosition() - 1);
+	}
+	
+	public void redo() {
+		if (canRedo()) {
+			goToMove(history.getPosition() + 1);
+			checkCompleted();
 		}
+	}
+	
+	/**
+	 * Shows the board as it was after a number of moves. Only the cells
+	 * that differ from the board shown are changed, and the moves after
+	 * it can still be redone. The notes the moves in between removed are
+	 * put back, or removed again.
+	 * 
+	 * @param position Number of moves, 0 for the board as given
+	 */
+	public void goToMove(int position) {
+		int from = history.getPosition();
+		MoveHistory.Snapshot shown = history.getCurrent();
+		MoveHistory.Snapshot target = history.jump(position);
 		
-		// Columns
-		for (int i=0; i<tiles[0].length; i++) {
-			neighbours.add(tiles[y][i]);
+		for (int move=from-1; move>=position; move--) {
+			updateNotes(move, true);
+		}
+		for (int move=from; move<position; move++) {
+			updateNotes(move, false);
 		}
 		
-		// Square
-		int startCol = (x / 3) * 3;
-		int startRow = (y / 3) * 3;
-
-		for (int i=startRow; i<startRow+3; i++) {
-			for (int j=startCol; j<startCol+3; j++) {
-				neighbours.add(tiles[i][j]);
+		for (int row=0; row<Topology.SIZE; row++) {
+			int changes = target.changes(shown, row);
+			while (changes != 0) {
+				int col = Integer.numberOfTrailingZeros(changes);
+				changes &= changes - 1;
+				placeNumber(col, row, target.get(Topology.cell(row, col)));
 			}
 		}
 		
-		return neighbours;
+		changed();
+	}
+	
+	/**
+	 * Puts back the notes a move removed, or removes them again.
+	 * 
+	 * @param move The move
+	 * @param undo True to put them back
+	 */
+	private void updateNotes(int move, boolean undo) {
+		int peers = history.getClearedNotes(move);
+		if (peers == 0) return;
+		
+		int cell = history.getCell(move);
+		int num = history.getNumber(move);
+		if (undo) {
+			notes.restore(cell, num, peers);
+		} else {
+			notes.remove(cell, num, peers);
+		}
+		repaintLines(cell);
 	}
 	
 	public void finishGame() {
@@ -258,13 +628,16 @@ public class SudokuBoard extends JPanel implements MouseListener {
 			frame.inGame = false;
 			frame.statusBar.stopTime();
 			
-			game = finished;
-
-			for (int i=0; i<tiles.length; i++) {
-				for (int j=0; j<tiles[0].length; j++) {
-					tiles[i][j].setText(new Integer(game[i][j]).toString());
+			// Kept in the history so that retrying starts from it
+			for (int cell=0; cell<Topology.CELLS; cell++) {
+				int x = Topology.col(cell), y = Topology.row(cell);
+				int num = finished[y][x];
+				if (game[y][x] != num) {
+					history.record(cell, game[y][x], num);
+					placeNumber(x, y, num);
 				}
 			}
+			changed();
 			
 		} else {
 			System.out.println("ERROR: Couldn't finish game.");
@@ -273,22 +646,15 @@ public class SudokuBoard extends JPanel implements MouseListener {
 	
 	public void retryGame() {
 		
-		game = new int[gameOriginal.length][gameOriginal[0].length];
-		for (int i=0; i<gameOriginal.length; i++) {
-			for (int j=0; j<gameOriginal[0].length; j++) {
-				game[i][j] = gameOriginal[i][j];
-				
-				if (game[i][j] > 0) {
-					tiles[i][j].setText(
-						new Integer(gameOriginal[i][j]).toString());
-				} else {
-					tiles[i][j].setText(null);
-				}
-			}
-		}
-		
+		// The moves of a finished game are not kept for redoing
+		boolean finished = !frame.inGame;
 		frame.inGame = true;
 		frame.statusBar.startTime();
+		goToMove(0);
+		if (finished) {
+			history.truncate();
+			frame.boardChanged();
+		}
 		
 	}
 	
@@ -330,31 +696,33 @@ public class SudokuBoard extends JPanel implements MouseListener {
 			
 		}
 		
-		public void showDialog(int x, int y) {
+		/**
+		 * @param noting True when choosing a note, which marks the
+		 *		numbers already noted
+		 */
+		public void showDialog(int x, int y, boolean noting) {
 
-			setBounds(frame.getBounds().x + (x*55),
-				frame.getBounds().y + ((y+1)*55), 110, 130);
+			Point location = SudokuBoard.this.getLocationOnScreen();
+			setBounds(location.x + originX + x * tileSize,
+				location.y + originY + (y + 1) * tileSize, 110, 130);
 			
-			changeButtonBackground(frame.numberAssistance, x, y);
+			changeButtonBackground(frame.numberAssistance, x, y,
+					noting ? notes.get(Topology.cell(y, x)) : 0);
 			
 			setVisible(true);
 		}
 		
-		private void changeButtonBackground(boolean help, int x, int y) {
-			if (help) {
-				int[] validNumbers = SudokuFactory.getPossibleNumbers(
-					game, y, x);
-				
-				for (JLabel button : buttons) {
-					int num = Integer.parseInt(button.getText());
-					if (validNumbers[num] == 1) { // Not valid
-						button.setBackground(Color.lightGray);
-					} else {
-						button.setBackground(Color.white);
-					}
-				}
-			} else {
-				for(JLabel button : buttons) {
+		private void changeButtonBackground(boolean help, int x, int y,
+				int noted) {
+			int used = help ? hints.getUsed(Topology.cell(y, x)) : 0;
+			
+			for (JLabel button : buttons) {
+				int bit = 1 << (Integer.parseInt(button.getText()) - 1);
+				if ((noted & bit) != 0) {
+					button.setBackground(NOTED_COLOR);
+				} else if ((used & bit) != 0) { // Not valid
+					button.setBackground(Color.lightGray);
+				} else {
 					button.setBackground(Color.white);
 				}
 			}
@@ -37,83 +37,206 @@ public class SudokuFactory {
 	public static final int MEDIUM = 65;
 	public static final int HARD = 75;
 	
+	private static final int MAX_BACKTRACKS = 1000;
+	
 	private static Random rand = new Random();
 	
+	/* The solver is reused between calls, one per thread */
+	private static final ThreadLocal<DancingLinks> solver =
+			new ThreadLocal<DancingLinks>() {
+		@Override
+		protected DancingLinks initialValue() {
+			return new DancingLinks();
+		}
+	};
+	
+	private static final ThreadLocal<DifficultyRater> raters =
+			new ThreadLocal<DifficultyRater>() {
+		@Override
+		protected DifficultyRater initialValue() {
+			return new DifficultyRater();
+		}
+	};
+	
 	/**
 	 * Creates a 9 x 9 sudoku table fully filled.
 	 * 
 	 * @return The game
 	 */
 	public static int[][] createGame() {
-		int[][] board = new int[9][9];
-
-		int counter = 0;
+		return createGrid(rand).toArray();
+	}
+	
+	/**
+	 * Creates a fully filled grid by backtracking over the cells in
+	 * order, trying the free numbers of each cell in random order.
+	 * The search is iterative, and if it ever backtracks too much it
+	 * simply starts over, so the running time is bounded.
+	 * 
+	 * @param random The random generator to use
+	 * @return The grid
+	 */
+	public static Grid createGrid(Random random) {
+		Grid grid = new Grid();
+		int[] tried = new int[Grid.CELLS];
+		int cell = 0;
+		int backtracks = 0;
 		
-		outer:
-		for (int i=0; i<board.length; i++) {
-
-			for (int j=0; j<board[0].length; j++) {
-				counter++;
-
-				int[] triedNumbers = new int[9];
+		while (cell < Grid.CELLS) {
+			int mask = grid.candidates(cell) & ~tried[cell];
+			
+			if (mask == 0) {
+				// Dead end, go back and try the previous cell again
+				tried[cell] = 0;
+				grid.clear(--cell);
 				
-				board[i][j] = randInt(1, 9);
-				while (!checkValid(board, i, j)) {
-
-					if (addToTriedNumbers(triedNumbers, board[i][j])) {
-						break; // DO SOMETHING; GO BACK
-					}
-					
-					board[i][j] = randInt(1, 9);
+				if (++backtracks > MAX_BACKTRACKS) {
+					grid.reset();
+					for (int i=0; i<Grid.CELLS; i++) tried[i] = 0;
+					cell = 0;
+					backtracks = 0;
 				}
-					
-				if (!checkValid(board, i, j)) {
-					if (i>0) i--;
-					if (j>0) j--;
-				}
-				
-				if (counter > 1000) break outer;
+			} else {
+				int num = randomNumber(mask, random);
+				tried[cell] |= 1 << (num - 1);
+				grid.place(cell, num);
+				cell++;
 			}
 		}
 		
-		/* If counter > 1000, something is fishy and we try again.
-		 * This is a bugfix for a problem with createGame(difficulty)
-		 * getting trapped in an endless loop.
-		 */
-		if (counter > 1000) {
-			return createGame();
-		} else {
-			return board;
-		}
+		return grid;
 	}
 	
 	/**
 	 * Creates a game board with a given difficulty.
 	 * 
-	 * @param difficulty Integer pointing to how many
-	 *		tiles to remove
+	 * @param difficulty EASY, MEDIUM or HARD. Any other value is taken
+	 *		as the number of tiles to remove
 	 * @return The game board
 	 */
 	public static int[][] createGame(int difficulty) {
+		return createPuzzle(difficulty, rand).toArray();
+	}
+	
+	/**
+	 * Creates a puzzle with a given difficulty. Puzzles are rated by the
+	 * techniques needed to solve them, and new ones are made until one
+	 * fits the level. A puzzle that doesn't fit is never returned.
+	 * 
+	 * @param difficulty EASY, MEDIUM or HARD. Any other value is taken
+	 *		as the number of tiles to remove
+	 * @param random The random generator to use
+	 * @return The puzzle
+	 */
+	public static Grid createPuzzle(int difficulty, Random random) {
+		DifficultyRater rater = raters.get();
+		
+		/* Only a few percent of the puzzles made for the medium and hard
+		 * levels need their techniques, so many may have to be tried */
+		while (true) {
+			Grid puzzle = createPuzzle(createGrid(random),
+					getClues(difficulty), true, random);
+			
+			rater.rate(puzzle);
+			if (fitsDifficulty(difficulty, rater.getHardest())) return puzzle;
+		}
+	}
+	
+	/**
+	 * Creates a puzzle by removing numbers from a solved grid. The cells
+	 * are visited once each in random order, and a number is only
+	 * removed if the puzzle still has exactly one solution afterwards.
+	 * 
+	 * @param solution The solved grid, left untouched
+	 * @param clues Stop when this many numbers are left
+	 * @param symmetric Remove numbers in pairs mirrored around the
+	 *		center, keeping the puzzle symmetric
+	 * @param random The random generator to use
+	 * @return The puzzle. It has more than the given clues only if
+	 *		no more numbers could be removed
+	 */
+	public static Grid createPuzzle(Grid solution, int clues,
+			boolean symmetric, Random random) {
 		
-		int[][] game;
+		Grid puzzle = new Grid(solution);
+		
+		int[] order = new int[Grid.CELLS];
+		for (int i=0; i<order.length; i++) {
+			int j = random.nextInt(i + 1);
+			order[i] = order[j];
+			order[j] = i;
+		}
 		
-		do {
+		for (int i=0; i<order.length && puzzle.getFilled()>clues; i++) {
+			int cell = order[i];
+			int mirror = symmetric ? Grid.CELLS - 1 - cell : cell;
+			int num = puzzle.get(cell);
+			int mirrorNum = puzzle.get(mirror);
 			
-			game = createGame();
+			// Already removed as the mirror of another cell
+			if (num == 0 || mirrorNum == 0) continue;
 			
-			for (int i=0; i<difficulty; i++) {
-
-				/* TODO: This should check if the position has already
-				 * been cleared out, and if so find a new position.
-				 */
-				game[randInt(0,8)][randInt(0,8)] = 0;
-
-			}
+			// Removing the pair would take us below the target
+			if (mirror != cell && puzzle.getFilled() - 2 < clues) continue;
 			
-		} while (!isPossible(game));
+			puzzle.clear(cell);
+			puzzle.clear(mirror);
+			
+			if (countSolutions(puzzle, 2) != 1) {
+				puzzle.place(cell, num);
+				puzzle.place(mirror, mirrorNum);
+			}
+		}
 		
-		return game;
+		return puzzle;
+	}
+	
+	/**
+	 * Translates a difficulty level into the number of clues to leave.
+	 * The levels keep their old values since highscores are stored
+	 * with them.
+	 * 
+	 * @param difficulty EASY, MEDIUM, HARD or number of tiles to remove
+	 * @return Number of clues
+	 */
+	public static int getClues(int difficulty) {
+		switch (difficulty) {
+			case EASY:
+				return 36;
+			case MEDIUM:
+				return 28;
+			case HARD:
+				return 24;
+			default:
+				return Grid.CELLS - difficulty;
+		}
+	}
+	
+	/**
+	 * Checks if the hardest technique a puzzle needs suits a difficulty
+	 * level. The levels don't overlap: easy games are solved with singles
+	 * only, medium games need locked candidates, and hard games need
+	 * pairs, triples, X-Wing or Swordfish. Games that can't be solved
+	 * without guessing fit none of them.
+	 * 
+	 * @param difficulty EASY, MEDIUM, HARD or number of tiles to remove
+	 * @param hardest The hardest technique needed, null if none
+	 * @return True if it fits
+	 */
+	public static boolean fitsDifficulty(int difficulty, Technique hardest) {
+		if (hardest == null) hardest = Technique.NAKED_SINGLE;
+		
+		switch (difficulty) {
+			case EASY:
+				return hardest.compareTo(Technique.HIDDEN_SINGLE) <= 0;
+			case MEDIUM:
+				return hardest == Technique.LOCKED_CANDIDATES;
+			case HARD:
+				return hardest.compareTo(Technique.NAKED_PAIR) >= 0
+						&& hardest.compareTo(Technique.SWORDFISH) <= 0;
+			default:
+				return true;
+		}
 	}
 	
 	/**
@@ -124,46 +247,20 @@ public class SudokuFactory {
 	 * @return The finished game
 	 */
 	public static int[][] finishGame(int[][] game) {
-		
-		int[][] copy = new int[game.length][game[0].length];
-		for (int i=0; i<game.length; i++) {
-			for (int j=0; j<game[0].length; j++) {
-				copy[i][j] = game[i][j];
-			}
-		}
-		
-		boolean someLeft;
-		int counter = 0;
-		
-		do {
-			someLeft = false;
-			counter++;
-			
-			for (int i=0; i<copy.length; i++) {
-				for (int j=0; j<copy[0].length; j++) {
-					
-					if (copy[i][j] == 0) {
-
-						int[] validNumbers = getPossibleNumbers(copy, i, j);
-						int sum = 0;
-						for (int num : validNumbers) sum += num;
-
-						if (sum == 8) { // Only one possible number
-						
-							// Find the one and use it
-							for (int k=1; k<validNumbers.length; k++) {
-								if (validNumbers[k] == 0) copy[i][j] = k;
-							}
-							
-						} else {
-							someLeft = true;	
-						}
-					}
-				}
-			}
-		} while (someLeft && counter < 100);
-		
-		return counter < 100 ? copy : null;
+		Grid finished = finishGame(new Grid(game));
+		return finished != null ? finished.toArray() : null;
+	}
+	
+	/**
+	 * Finishes a given grid. Does not touch given grid.
+	 * Returns a finished copy.
+	 * 
+	 * @param grid The grid to finish
+	 * @return The finished grid, or null if it can't be finished
+	 */
+	public static Grid finishGame(Grid grid) {
+		Grid solution = new Grid();
+		return solver.get().solve(grid, solution) ? solution : null;
 	}
 	
 	/**
@@ -174,7 +271,54 @@ public class SudokuFactory {
 	 * @return True if possible, else false
 	 */
 	public static boolean isPossible(int[][] game) {
-		return finishGame(game) != null;
+		return isPossible(new Grid(game));
+	}
+	
+	/**
+	 * Checks to see if a grid is possible to finish.
+	 * 
+	 * @param grid The grid to check
+	 * @return True if possible, else false
+	 */
+	public static boolean isPossible(Grid grid) {
+		return solver.get().search(grid, null, 1) > 0;
+	}
+	
+	/**
+	 * Counts the solutions of a game, stopping early when the limit
+	 * is reached. A limit of 2 is enough to tell if a game has
+	 * exactly one solution.
+	 * 
+	 * @param game The game board to check
+	 * @param limit Stop counting after this many solutions
+	 * @return Number of solutions, at most limit
+	 */
+	public static int countSolutions(int[][] game, int limit) {
+		return countSolutions(new Grid(game), limit);
+	}
+	
+	/**
+	 * Counts the solutions of a grid, stopping early when the limit
+	 * is reached.
+	 * 
+	 * @param grid The grid to check
+	 * @param limit Stop counting after this many solutions
+	 * @return Number of solutions, at most limit
+	 */
+	public static int countSolutions(Grid grid, int limit) {
+		return solver.get().search(grid, null, limit);
+	}
+	
+	/**
+	 * Solves a grid and counts its solutions in the same search.
+	 * 
+	 * @param grid The grid to solve, left untouched
+	 * @param solution Grid to write the first solution into
+	 * @param limit Stop counting after this many solutions
+	 * @return Number of solutions, at most limit
+	 */
+	public static int solve(Grid grid, Grid solution, int limit) {
+		return solver.get().search(grid, solution, limit);
 	}
 	
 	/**
@@ -188,107 +332,55 @@ public class SudokuFactory {
 	 */
 	public static int[] getPossibleNumbers(int[][] game, int row, int col) {
 		
-		int[] validNumbers = new int[10];
-		
-		// Rows
-		for (int i=0; i<game.length; i++) {
-			if (game[i][col] != 0) {
-				validNumbers[game[i][col]] = 1;
-			}
-		}
+		int used = bit(game[row][col]);
 		
-		// Columns
-		for (int i=0; i<game[0].length; i++) {
-			if (game[row][i] != 0) {
-				validNumbers[game[row][i]] = 1;
-			}
+		// Rows, columns and square
+		int cell = Topology.cell(row, col);
+		for (int n=0; n<Topology.PEERS; n++) {
+			int peer = Topology.peer(cell, n);
+			used |= bit(game[Topology.row(peer)][Topology.col(peer)]);
 		}
 		
-		// Square
-		int startCol = (col / 3) * 3;
-		int startRow = (row / 3) * 3;
-
-		for (int i=startRow; i<startRow+3; i++) {
-			for (int j=startCol; j<startCol+3; j++) {
-				if (game[i][j] != 0) {
-					validNumbers[game[i][j]] = 1;
-				}
-			}
+		int[] validNumbers = new int[10];
+		for (int num=1; num<validNumbers.length; num++) {
+			validNumbers[num] = (used >> (num - 1)) & 1;
 		}
 		
 		return validNumbers;
 	}
 	
 	/**
-	 * Returns a random integer between given integers
+	 * Fetches all possible values for that position in the grid
 	 * 
-	 * @param start Lowest possible return
-	 * @param end Highest possible return
-	 * @return The number generated
+	 * @param grid The grid
+	 * @param row The row
+	 * @param col The column
+	 * @return Mask where bit n-1 is set if number n is free
 	 */
-	private static int randInt(int start, int end) {
-		end++;
-		if (start < end) {
-			return rand.nextInt(end-start) + start;
-		} else {
-			return -1;
-		}
+	public static int getCandidates(Grid grid, int row, int col) {
+		return grid.candidates(row, col);
 	}
 	
 	/**
-	 * Checks if a given board position number is valid according to
-	 * sudoku rules
+	 * @param num A number from 0-9
+	 * @return The number's mask bit, or 0 for an empty cell
+	 */
+	private static int bit(int num) {
+		return num != 0 ? 1 << (num - 1) : 0;
+	}
+	
+	/**
+	 * Picks a random number from a mask of numbers
 	 * 
-	 * @param game The game board to use
-	 * @param row Row position
-	 * @param col Column position
-	 * @return The valid status
+	 * @param mask The mask, bit n-1 meaning number n
+	 * @param random The random generator to use
+	 * @return The number picked
 	 */
-	private static boolean checkValid(int[][] game, int row, int col) {
-		boolean ok = true;
-		
-		int num = game[row][col];
-
-		
-		// Check rows
-		if (ok) {
-			for (int i=0; i<row; i++) {
-				if (game[i][col] == num) {
-					ok = false;
-					break;
-				}
-			}
-		}
-		
-		// Check columns
-		if (ok) {
-			for (int i=0; i<col; i++) {
-				if (game[row][i] == num) {
-					ok = false;
-					break;
-				}
-			}
+	private static int randomNumber(int mask, Random random) {
+		for (int n=random.nextInt(Integer.bitCount(mask)); n>0; n--) {
+			mask &= mask - 1;
 		}
-		
-		// Check square
-		if (ok) {
-			int startCol = (col / 3) * 3;
-			int startRow = (row / 3) * 3;
-
-			outer:
-			for (int i=startRow; i<startRow+3; i++) {
-				for (int j=startCol; j<startCol+3; j++) {
-					if (i != row && j != col) { // Don't check this number
-						if (game[i][j] == num) {
-							ok = false;
-							break outer;
-						}
-					}
-				}
-			}
-		}
-		
-		return ok;
+		return Grid.firstNumber(mask);
 	}
 	
 	/**
@@ -296,50 +388,19 @@ public class SudokuFactory {
 	 * Handy when in doubt of createGame method's integrity.
 	 * 
 	 * @param game The game board to check
-	 * @return Valid status
+	 * @return True if the board is filled out without errors
 	 */
 	public static boolean checkValid(int[][] game) {
-		boolean ok = true;
-		
-		outer:
-		for (int i=0; i<game.length; i++) {
-			for (int j=0; j<game[0].length; j++) {
-				if (!checkValid(game, i, j)) {
-					ok = false;
-					break outer;
-				}
-			}
-		}
-		
-		return ok;
+		return checkValid(new Grid(game));
 	}
 	
 	/**
-	 * Helper method that adds a number to an array if not already
-	 * in there.
+	 * Checks an entire grid for errors.
 	 * 
-	 * @param array The array to use
-	 * @param num The number to add if not present
-	 * @return True if the array is full, else false
+	 * @param grid The grid to check
+	 * @return True if the grid is filled out without errors
 	 */
-	private static boolean addToTriedNumbers(int[] array, int num) {
-		boolean present = false;
-		int endIndex = 0;
-		for (int i=0; i<array.length; i++) {
-			if (array[i] == num) {
-				present = true;
-				break;
-			} else if (array[i] == 0) {
-				endIndex = i;
-				break;
-			}
-		}
-		
-		if (!present) {
-			array[endIndex] = num;
-		}
-		
-		if (endIndex == array.length-1) return true;
-		else return false;
+	public static boolean checkValid(Grid grid) {
+		return grid.isValid() && grid.isFull();
 	}
 }
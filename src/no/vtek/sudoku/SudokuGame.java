@@ -29,6 +29,11 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
+import java.awt.event.KeyEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.File;
+import java.io.IOException;
 import javax.swing.*;
 
 /**
@@ -41,10 +46,14 @@ public class SudokuGame extends JFrame implements ActionListener, ItemListener {
 
 	private MenuItem newGameItem;
 	private MenuItem retryGameItem;
+	private MenuItem undoItem;
+	private MenuItem redoItem;
 	private MenuItem highscoreGameItem;
 	private MenuItem exitGameItem;
 	private CheckboxMenuItem lineAssistanceMenuItem;
 	private CheckboxMenuItem numberAssistanceMenuItem;
+	private CheckboxMenuItem hintsMenuItem;
+	private CheckboxMenuItem autoNotesMenuItem;
 	private CheckboxMenuItem redoMenuItem;
 	private MenuItem finishMenuItem;
 	private MenuItem aboutMenuItem;
@@ -54,15 +63,38 @@ public class SudokuGame extends JFrame implements ActionListener, ItemListener {
 	protected boolean inGame = false;
 	protected boolean lineAssistance = true;
 	protected boolean numberAssistance = false;
+	protected boolean hints = false;
+	protected boolean autoNotes = true;
 	protected boolean redo = true;
 	protected int[][] game = null;
 	private int difficultyLevel = -1;
+	private PuzzlePool puzzlePool;
+	private Autosave autosave = new Autosave(new File(Autosave.FILENAME));
 
 	public SudokuGame() {
 		super("Sudoku puzzle");
 		setSize(500, 500);
 		setDefaultCloseOperation(EXIT_ON_CLOSE);
-		setResizable(false);
+		
+		// Don't count the time while the window is minimized
+		addWindowListener(new WindowAdapter() {
+			@Override
+			public void windowIconified(WindowEvent e) {
+				statusBar.pauseTime();
+				saveGame();
+			}
+
+			@Override
+			public void windowDeiconified(WindowEvent e) {
+				statusBar.resumeTime();
+			}
+
+			@Override
+			public void windowClosing(WindowEvent e) {
+				exit();
+			}
+		});
+		setResizable(true);
 
 		// Try to use system look and feel
 		try {
@@ -70,6 +102,16 @@ public class SudokuGame extends JFrame implements ActionListener, ItemListener {
 				UIManager.getSystemLookAndFeelClassName());
 		} catch (Exception e) { }
 
+		PuzzleBank bank = null;
+		try {
+			bank = PuzzleBank.open(new File(PuzzleBank.FILENAME));
+		} catch (IOException e) {
+			System.err.println("Error while reading puzzle bank");
+		}
+		
+		puzzlePool = new PuzzlePool(bank, SudokuFactory.EASY,
+				SudokuFactory.MEDIUM, SudokuFactory.HARD);
+
 		statusBar = new StatusBar(this);
 		add(statusBar, BorderLayout.SOUTH);
 
@@ -85,6 +127,14 @@ public class SudokuGame extends JFrame implements ActionListener, ItemListener {
 		retryGameItem = new MenuItem("Retry game");
 		retryGameItem.addActionListener(this);
 
+		undoItem = new MenuItem("Undo", new MenuShortcut(KeyEvent.VK_Z));
+		undoItem.addActionListener(this);
+		undoItem.setEnabled(false);
+
+		redoItem = new MenuItem("Redo", new MenuShortcut(KeyEvent.VK_Y));
+		redoItem.addActionListener(this);
+		redoItem.setEnabled(false);
+
 		highscoreGameItem = new MenuItem("Highscore list");
 		highscoreGameItem.addActionListener(this);
 
@@ -93,6 +143,8 @@ public class SudokuGame extends JFrame implements ActionListener, ItemListener {
 
 		gameMenu.add(newGameItem);
 		gameMenu.add(retryGameItem);
+		gameMenu.add(undoItem);
+		gameMenu.add(redoItem);
 		gameMenu.add(highscoreGameItem);
 		gameMenu.add(exitGameItem);
 
@@ -111,7 +163,18 @@ public class SudokuGame extends JFrame implements ActionListener, ItemListener {
 		numberAssistanceMenuItem.setState(false);
 
 		assistance.add(lineAssistanceMenuItem);
+		hintsMenuItem = new CheckboxMenuItem("Hints");
+		hintsMenuItem.addItemListener(this);
+		hintsMenuItem.setState(false);
+
 		assistance.add(numberAssistanceMenuItem);
+		assistance.add(hintsMenuItem);
+
+		autoNotesMenuItem = new CheckboxMenuItem("Remove Notes Automatically");
+		autoNotesMenuItem.addItemListener(this);
+		autoNotesMenuItem.setState(true);
+
+		assistance.add(autoNotesMenuItem);
 
 		redoMenuItem = new CheckboxMenuItem("Redo possible");
 		redoMenuItem.addItemListener(this);
@@ -141,7 +204,13 @@ public class SudokuGame extends JFrame implements ActionListener, ItemListener {
 		// Center
 		this.setLocationRelativeTo(null);
 
-		startNewGame();
+		// Pick up where the last session ended if it left a game
+		SavedGame saved = autosave.load();
+		if (saved != null) {
+			resumeGame(saved);
+		} else {
+			startNewGame();
+		}
 	}
 
 	protected void startNewGame() {
@@ -179,23 +248,118 @@ public class SudokuGame extends JFrame implements ActionListener, ItemListener {
 			} else if (dif == welcomeDialog.hardButton) {
 				difficultyLevel = SudokuFactory.HARD;
 			} else {
-				System.exit(0);
+				exit();
 			}
 		
-			game = SudokuFactory.createGame(difficultyLevel);
+			game = puzzlePool.poll(difficultyLevel);
 			
-			gamePanel = new SudokuBoard(this, game);
+			if (game != null) {
+				startGame(game);
+			} else {
+				generateGame(difficultyLevel);
+			}
+		}
+	}
+	
+	/**
+	 * Generates a game in the background when none are ready, showing
+	 * progress in the status bar meanwhile.
+	 * 
+	 * @param difficulty The difficulty level
+	 */
+	private void generateGame(final int difficulty) {
+		statusBar.setBusy(true);
+		newGameItem.setEnabled(false);
+		
+		new SwingWorker<int[][], Void>() {
+			@Override
+			protected int[][] doInBackground() {
+				return SudokuFactory.createGame(difficulty);
+			}
 
-			inGame = true;
+			@Override
+			protected void done() {
+				statusBar.setBusy(false);
+				newGameItem.setEnabled(true);
+				
+				try {
+					startGame(get());
+				} catch (Exception e) {
+					System.err.println("Error while generating game");
+				}
+			}
+		}.execute();
+	}
+	
+	private void startGame(int[][] game) {
+		startGame(game, new SudokuBoard(this, game), 0);
+	}
+	
+	private void startGame(int[][] game, SudokuBoard board, long time) {
+		this.game = game;
+		
+		gamePanel = board;
 
-			add(gamePanel, BorderLayout.CENTER);
+		inGame = true;
 
-			statusBar.startTime();
+		add(gamePanel, BorderLayout.CENTER);
 
-			pack();
-				
+		statusBar.startTime(time);
+		gamePanel.updateHint();
+		boardChanged();
+
+		pack();
+	}
+	
+	/**
+	 * Continues a saved game, with the settings it was saved with.
+	 * 
+	 * @param saved The saved game
+	 */
+	private void resumeGame(SavedGame saved) {
+		difficultyLevel = saved.getDifficulty();
+		
+		lineAssistance = saved.getLineAssistance();
+		numberAssistance = saved.getNumberAssistance();
+		hints = saved.getHints();
+		autoNotes = saved.getAutoNotes();
+		redo = saved.getRedo();
+		lineAssistanceMenuItem.setState(lineAssistance);
+		numberAssistanceMenuItem.setState(numberAssistance);
+		hintsMenuItem.setState(hints);
+		autoNotesMenuItem.setState(autoNotes);
+		redoMenuItem.setState(redo);
+		
+		int[][] current = saved.getGame();
+		SudokuBoard board = new SudokuBoard(this, current, saved.getOriginal());
+		board.setNotes(saved.getNotes());
+		startGame(current, board, saved.getTime());
+	}
+	
+	/**
+	 * Asks for the game in progress to be saved, or for the saved game to
+	 * be removed if no game is in progress.
+	 */
+	private void saveGame() {
+		if (inGame && gamePanel != null) {
+			autosave.save(new SavedGame(difficultyLevel,
+					gamePanel.getOriginal(), game, gamePanel.getNotes(),
+					statusBar.getTime(), lineAssistance, numberAssistance,
+					hints, autoNotes, redo));
+		} else {
+			autosave.discard();
 		}
 	}
+	
+	/**
+	 * Saves the game in progress and quits.
+	 */
+	protected void exit() {
+		saveGame();
+		autosave.flush();
+		HighscoreService.shutdown();
+		System.exit(0);
+	}
 
 	@Override
 	public void actionPerformed(ActionEvent e) {
@@ -204,7 +368,7 @@ public class SudokuGame extends JFrame implements ActionListener, ItemListener {
 		if (source == newGameItem) {
 			startNewGame();
 		} else if (source == exitGameItem) {
-			System.exit(0);
+			exit();
 		} else if (source == aboutMenuItem) {
 			JOptionPane.showMessageDialog(this, "About Sudoku:\n\n"
 							+ "Another clone of the Japanese puzzle.\n\n"
@@ -223,11 +387,15 @@ public class SudokuGame extends JFrame implements ActionListener, ItemListener {
 							+ "This can not be undone.", "Sure?",
 							JOptionPane.YES_NO_OPTION);
 
-			if (ans == JOptionPane.YES_OPTION) {
+			if (ans == JOptionPane.YES_OPTION && gamePanel != null) {
 				gamePanel.finishGame();
 			}
-		} else if (source == retryGameItem) {
+		} else if (source == retryGameItem && gamePanel != null) {
 			gamePanel.retryGame();
+		} else if (source == undoItem && gamePanel != null) {
+			gamePanel.undo();
+		} else if (source == redoItem && gamePanel != null) {
+			gamePanel.redo();
 		} else if (source == highscoreGameItem) {
 			HighscoreService.showHighscoreTable(this, difficultyLevel);
 		}
@@ -244,19 +412,34 @@ public class SudokuGame extends JFrame implements ActionListener, ItemListener {
 				lineAssistance = source.getState();
 			} else if (source == numberAssistanceMenuItem) {
 				numberAssistance = source.getState();
+			} else if (source == hintsMenuItem) {
+				hints = source.getState();
+				if (gamePanel != null) gamePanel.updateHint();
+			} else if (source == autoNotesMenuItem) {
+				autoNotes = source.getState();
 			} else if (source == redoMenuItem) {
 				redo = source.getState();
 			}
+			
+			if (inGame) saveGame();
 		}
 	}
 
+	/**
+	 * Enables undo and redo as far as the board's history allows, and
+	 * saves the game.
+	 */
+	protected void boardChanged() {
+		undoItem.setEnabled(gamePanel != null && gamePanel.canUndo());
+		redoItem.setEnabled(gamePanel != null && gamePanel.canRedo());
+		saveGame();
+	}
+
 	public void gameOver() {
 		inGame = false;
+		boardChanged();
 
-		HighscoreItem worst = HighscoreService.getWorst(difficultyLevel);
-
-		if (HighscoreService.hasFreeSlots(difficultyLevel)
-						|| statusBar.getTime() > worst.getTime()) {
+		if (HighscoreService.qualifies(difficultyLevel, statusBar.getTime())) {
 
 			String name = JOptionPane.showInputDialog("Congratulations,\n"
 							+ "you have completed the game and you've\nreached "
@@ -268,7 +451,7 @@ public class SudokuGame extends JFrame implements ActionListener, ItemListener {
 
 			if (name != null) {
 				HighscoreService.addScore(name, difficultyLevel,
-								statusBar.getTime() / 1000);
+								statusBar.getTime());
 
 				HighscoreService.showHighscoreTable(this, difficultyLevel);
 			}
@@ -280,7 +463,7 @@ public class SudokuGame extends JFrame implements ActionListener, ItemListener {
 			if (ans == JOptionPane.YES_OPTION) {
 				startNewGame();
 			} else {
-				System.exit(0);
+				exit();
 			}
 		} else {
 
@@ -292,7 +475,7 @@ public class SudokuGame extends JFrame implements ActionListener, ItemListener {
 			if (ans == JOptionPane.YES_OPTION) {
 				startNewGame();
 			} else {
-				System.exit(0);
+				exit();
 			}
 		}
 	}
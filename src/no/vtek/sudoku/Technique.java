@@ -0,0 +1,63 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Vegard Løkken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package no.vtek.sudoku;
+
+/**
+ * Solving techniques, from the easiest to the hardest. Each has a
+ * weight that is added to a puzzle's rating every time it is used.
+ * 
+ * @author Vegard Løkken
+ * @version 0.25
+ */
+public enum Technique {
+	NAKED_SINGLE("Naked single", 1),
+	HIDDEN_SINGLE("Hidden single", 2),
+	LOCKED_CANDIDATES("Locked candidates", 10),
+	NAKED_PAIR("Naked pair", 20),
+	HIDDEN_PAIR("Hidden pair", 25),
+	NAKED_TRIPLE("Naked triple", 30),
+	HIDDEN_TRIPLE("Hidden triple", 35),
+	X_WING("X-Wing", 50),
+	SWORDFISH("Swordfish", 70),
+	GUESS("Guessing", 200);
+	
+	private final String name;
+	private final int weight;
+	
+	private Technique(String name, int weight) {
+		this.name = name;
+		this.weight = weight;
+	}
+	
+	public int getWeight() {
+		return weight;
+	}
+	
+	@Override
+	public String toString() {
+		return name;
+	}
+}
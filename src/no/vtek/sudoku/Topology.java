@@ -0,0 +1,158 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Vegard Løkken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package no.vtek.sudoku;
+
+/**
+ * Precomputed layout of the 9 x 9 board, shared by the engine and the
+ * board UI. Cells are numbered 0-80 row by row, and units are numbered
+ * with rows 0-8, columns 9-17 and boxes 18-26.
+ * 
+ * The tables are flat int arrays built once and kept private, so hot
+ * loops can walk a cell's peers or a unit's cells through the small
+ * accessors below without any allocation or duplicates, and nothing
+ * outside can change them.
+ * 
+ * @author Vegard Løkken
+ * @version 0.25
+ */
+final class Topology {
+	public static final int SIZE = 9;
+	public static final int CELLS = SIZE * SIZE;
+	public static final int UNITS = 3 * SIZE;
+	public static final int PEERS = 20;
+	
+	private static final int[] ROW = new int[CELLS];
+	private static final int[] COL = new int[CELLS];
+	private static final int[] BOX = new int[CELLS];
+	
+	/* The 9 cells of each unit, at [unit * 9] */
+	private static final int[] UNIT_CELLS = new int[UNITS * SIZE];
+	
+	/* The row, column and box unit of each cell, at [cell * 3] */
+	private static final int[] CELL_UNITS = new int[CELLS * 3];
+	
+	/* The 20 other cells sharing a unit with each cell, at [cell * 20] */
+	private static final int[] CELL_PEERS = new int[CELLS * PEERS];
+	
+	static {
+		for (int cell=0; cell<CELLS; cell++) {
+			int row = cell / SIZE, col = cell % SIZE;
+			int box = (row / 3) * 3 + col / 3;
+			
+			ROW[cell] = row;
+			COL[cell] = col;
+			BOX[cell] = box;
+			
+			CELL_UNITS[cell * 3] = row;
+			CELL_UNITS[cell * 3 + 1] = SIZE + col;
+			CELL_UNITS[cell * 3 + 2] = 2 * SIZE + box;
+			
+			UNIT_CELLS[row * SIZE + col] = cell;
+			UNIT_CELLS[(SIZE + col) * SIZE + row] = cell;
+			UNIT_CELLS[(2 * SIZE + box) * SIZE + (row % 3) * 3 + col % 3] = cell;
+		}
+		
+		for (int cell=0; cell<CELLS; cell++) {
+			int n = 0;
+			for (int other=0; other<CELLS; other++) {
+				if (other != cell && (ROW[other] == ROW[cell]
+						|| COL[other] == COL[cell]
+						|| BOX[other] == BOX[cell])) {
+					CELL_PEERS[cell * PEERS + n++] = other;
+				}
+			}
+		}
+	}
+	
+	private Topology() {
+	}
+	
+	/**
+	 * @param cell The cell index (0-80)
+	 * @return The row (0-8)
+	 */
+	public static int row(int cell) {
+		return ROW[cell];
+	}
+	
+	/**
+	 * @param cell The cell index (0-80)
+	 * @return The column (0-8)
+	 */
+	public static int col(int cell) {
+		return COL[cell];
+	}
+	
+	/**
+	 * @param cell The cell index (0-80)
+	 * @return The box (0-8), numbered row by row
+	 */
+	public static int box(int cell) {
+		return BOX[cell];
+	}
+	
+	/**
+	 * @param cell The cell index (0-80)
+	 * @param n 0 for the row, 1 for the column and 2 for the box
+	 * @return The unit index
+	 */
+	public static int unit(int cell, int n) {
+		return CELL_UNITS[cell * 3 + n];
+	}
+	
+	/**
+	 * @param cell The cell index (0-80)
+	 * @param n Which peer (0-19)
+	 * @return The peer's cell index
+	 */
+	public static int peer(int cell, int n) {
+		return CELL_PEERS[cell * PEERS + n];
+	}
+	
+	/**
+	 * @param unit The unit index (0-26)
+	 * @param n Which cell of the unit (0-8)
+	 * @return The cell index
+	 */
+	public static int unitCell(int unit, int n) {
+		return UNIT_CELLS[unit * SIZE + n];
+	}
+	
+	/**
+	 * Checks if a cell is part of a unit.
+	 * 
+	 * @param cell The cell index (0-80)
+	 * @param unit The unit index (0-26)
+	 * @return True if it is
+	 */
+	public static boolean inUnit(int cell, int unit) {
+		return CELL_UNITS[cell * 3 + unit / SIZE] == unit;
+	}
+	
+	public static int cell(int row, int col) {
+		return row * SIZE + col;
+	}
+}
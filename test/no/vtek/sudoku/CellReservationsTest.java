@@ -0,0 +1,116 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Vegard Løkken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package no.vtek.sudoku;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks claiming, releasing and expiring cell leases, and the versions
+ * the changes get.
+ *
+ * @author Vegard Løkken
+ * @version 0.25
+ */
+public class CellReservationsTest {
+	
+	private final CellReservations reservations = new CellReservations(2);
+	
+	@Test
+	public void claimKeepsOthersOut() {
+		long slot = reservations.claim(0, 3, 0);
+		
+		assertEquals(3, CellReservations.getOwner(slot));
+		assertEquals(3, reservations.getOwner(0, 0));
+		assertEquals(CellReservations.UNCHANGED, reservations.claim(0, 4, 1));
+		assertEquals(-1, reservations.getOwner(1, 0));
+	}
+	
+	@Test
+	public void ownerRenewsLease() {
+		reservations.claim(0, 3, 0);
+		long renewed = reservations.claim(0, 3, CellReservations.LEASE - 1);
+		
+		assertTrue(CellReservations.isHeld(renewed,
+				2 * CellReservations.LEASE - 2));
+		assertEquals(2, CellReservations.getVersion(renewed));
+	}
+	
+	@Test
+	public void onlyOwnerReleases() {
+		reservations.claim(0, 3, 0);
+		
+		assertEquals(CellReservations.UNCHANGED, reservations.release(0, 4));
+		long released = reservations.release(0, 3);
+		
+		assertEquals(3, CellReservations.getOwner(released));
+		assertFalse(CellReservations.isHeld(released, 0));
+		assertEquals(CellReservations.UNCHANGED, reservations.release(0, 3));
+		assertTrue(reservations.claim(0, 4, 0) != CellReservations.UNCHANGED);
+	}
+	
+	@Test
+	public void leaseRunsOut() {
+		reservations.claim(0, 3, 0);
+		long later = CellReservations.LEASE;
+		
+		assertEquals(-1, reservations.getOwner(0, later));
+		assertEquals(CellReservations.UNCHANGED,
+				reservations.expire(0, later - 1));
+		
+		long expired = reservations.expire(0, later);
+		assertEquals(3, CellReservations.getOwner(expired));
+		assertEquals(CellReservations.UNCHANGED, reservations.expire(0, later));
+		assertEquals(CellReservations.UNCHANGED, reservations.expire(1, later));
+	}
+	
+	@Test
+	public void everyChangeBumpsVersion() {
+		assertEquals(1, CellReservations.getVersion(
+				reservations.claim(0, 3, 0)));
+		assertEquals(2, CellReservations.getVersion(
+				reservations.claim(0, 3, 0)));
+		assertEquals(3, CellReservations.getVersion(
+				reservations.release(0, 3)));
+		assertEquals(4, CellReservations.getVersion(
+				reservations.claim(0, 5, 0)));
+		assertEquals(5, CellReservations.getVersion(
+				reservations.expire(0, CellReservations.LEASE)));
+		assertEquals(0, CellReservations.getVersion(reservations.get(1)));
+	}
+	
+	@Test
+	public void versionWraps() {
+		for (int i=0; i<0x10000; i++) reservations.claim(0, 1, 0);
+		
+		assertEquals(0, CellReservations.getVersion(reservations.get(0)));
+		assertEquals(1, reservations.getOwner(0, 0));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void ownerMustFit() {
+		reservations.claim(0, 127, 0);
+	}
+}
@@ -0,0 +1,133 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Vegard Løkken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package no.vtek.sudoku;
+
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks the solutions found and counted by the exact cover solver.
+ *
+ * @author Vegard Løkken
+ * @version 0.25
+ */
+public class DancingLinksTest {
+	
+	private final DancingLinks solver = new DancingLinks();
+	
+	@Test
+	public void solvesPuzzleWithoutTouchingIt() {
+		Grid puzzle = SudokuFactory.createPuzzle(SudokuFactory.HARD,
+				new Random(2));
+		Grid copy = new Grid(puzzle);
+		Grid solution = new Grid();
+		
+		assertTrue(solver.solve(puzzle, solution));
+		assertTrue(solution.isFull());
+		assertTrue(new Grid(solution.toArray()).isValid());
+		assertArrayEquals(copy.toArray(), puzzle.toArray());
+		for (int cell=0; cell<Grid.CELLS; cell++) {
+			if (puzzle.get(cell) != 0) {
+				assertEquals(puzzle.get(cell), solution.get(cell));
+			}
+		}
+	}
+	
+	@Test
+	public void generatedPuzzleHasOneSolution() {
+		Grid puzzle = SudokuFactory.createPuzzle(SudokuFactory.MEDIUM,
+				new Random(3));
+		
+		assertEquals(1, solver.search(puzzle, null, 2));
+	}
+	
+	@Test
+	public void countStopsAtLimit() {
+		assertEquals(5, solver.search(new Grid(), null, 5));
+		assertEquals(1, solver.search(new Grid(), null, 1));
+	}
+	
+	@Test
+	public void deadlyRectangleHasTwoSolutions() {
+		Random random = new Random(4);
+		
+		// Most full grids have a rectangle of two numbers in two boxes
+		while (true) {
+			Grid grid = SudokuFactory.createGrid(random);
+			if (clearRectangle(grid)) {
+				assertEquals(2, solver.search(grid, null, 10));
+				return;
+			}
+		}
+	}
+	
+	@Test
+	public void impossiblePuzzleHasNoSolution() {
+		Grid puzzle = new Grid();
+		for (int col=0; col<8; col++) puzzle.place(0, col, col + 1);
+		puzzle.place(4, 8, 9);
+		
+		assertFalse(solver.solve(puzzle, new Grid()));
+		assertEquals(0, solver.search(puzzle, null, 2));
+	}
+	
+	@Test
+	public void instanceCanBeReused() {
+		Grid puzzle = SudokuFactory.createPuzzle(SudokuFactory.EASY,
+				new Random(5));
+		Grid first = new Grid();
+		Grid second = new Grid();
+		
+		solver.search(new Grid(), null, 3);
+		assertTrue(solver.solve(puzzle, first));
+		assertTrue(solver.solve(puzzle, second));
+		assertArrayEquals(first.toArray(), second.toArray());
+	}
+	
+	/**
+	 * Empties four cells in two rows of a band and two columns of
+	 * different stacks holding a, b and b, a, if there are any.
+	 */
+	private static boolean clearRectangle(Grid grid) {
+		for (int r1=0; r1<Grid.SIZE; r1++) {
+			for (int r2=r1+1; r2<r1/3*3+3; r2++) {
+				for (int c1=0; c1<Grid.SIZE; c1++) {
+					for (int c2=(c1/3+1)*3; c2<Grid.SIZE; c2++) {
+						if (grid.get(r1, c1) == grid.get(r2, c2)
+								&& grid.get(r1, c2) == grid.get(r2, c1)) {
+							grid.clear(r1, c1);
+							grid.clear(r1, c2);
+							grid.clear(r2, c1);
+							grid.clear(r2, c2);
+							return true;
+						}
+					}
+				}
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,182 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Vegard Løkken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package no.vtek.sudoku;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that cell locks keep the others out of a cell, that the frames
+ * telling about them carry the version of the lock, and that empty rooms
+ * close.
+ *
+ * @author Vegard Løkken
+ * @version 0.25
+ */
+public class GameRoomTest {
+	
+	private final ByteBuffer buffer =
+			ByteBuffer.allocate(MultiplayerProtocol.MAX_SIZE);
+	private GameRoom room;
+	private int cell;
+	private int number;
+	
+	/**
+	 * Keeps the frames it is sent.
+	 */
+	private static class Recorder extends GameRoom.Member {
+		final List<MultiplayerProtocol.Frame> frames =
+				new ArrayList<MultiplayerProtocol.Frame>();
+		
+		@Override
+		void send(ByteBuffer frame) {
+			MultiplayerProtocol.Frame read = new MultiplayerProtocol.Frame();
+			try {
+				assertTrue(MultiplayerProtocol.read(frame.duplicate(), read));
+			} catch (ProtocolException e) {
+				throw new AssertionError(e);
+			}
+			frames.add(read);
+		}
+		
+		@Override
+		void close() {
+		}
+		
+		MultiplayerProtocol.Frame last(int type) {
+			for (int i=frames.size()-1; i>=0; i--) {
+				if (frames.get(i).type == type) return frames.get(i);
+			}
+			return null;
+		}
+	}
+	
+	@Before
+	public void openRoom() {
+		int[][] game = SudokuFactory.createGame(SudokuFactory.EASY);
+		int[][] solution = SudokuFactory.finishGame(game);
+		
+		room = new GameRoom(1, game, solution);
+		cell = 0;
+		while (game[Topology.row(cell)][Topology.col(cell)] != 0) cell++;
+		number = solution[Topology.row(cell)][Topology.col(cell)];
+	}
+	
+	@Test
+	public void lockedCellCantBeSetByOthers() {
+		Recorder a = new Recorder();
+		Recorder b = new Recorder();
+		room.join(a);
+		room.join(b);
+		
+		room.lock(a, cell, buffer);
+		room.set(b, cell, number);
+		
+		assertEquals(0, b.last(MultiplayerProtocol.CELL).number);
+		assertNull(a.last(MultiplayerProtocol.CELL));
+		
+		room.set(a, cell, number);
+		assertEquals(number, b.last(MultiplayerProtocol.CELL).number);
+		assertEquals(cell, b.last(MultiplayerProtocol.UNLOCK).cell);
+	}
+	
+	@Test
+	public void lockFramesCarryNewerVersions() {
+		Recorder a = new Recorder();
+		room.join(a);
+		
+		room.lock(a, cell, buffer);
+		int locked = a.last(MultiplayerProtocol.LOCK).cellVersion;
+		room.unlock(a, cell, buffer);
+		int unlocked = a.last(MultiplayerProtocol.UNLOCK).cellVersion;
+		room.lock(a, cell, buffer);
+		int relocked = a.last(MultiplayerProtocol.LOCK).cellVersion;
+		
+		assertTrue(unlocked > locked);
+		assertTrue(relocked > unlocked);
+	}
+	
+	@Test
+	public void joinerGetsLocksWithTheirVersions() {
+		Recorder a = new Recorder();
+		Recorder b = new Recorder();
+		room.join(a);
+		room.lock(a, cell, buffer);
+		room.join(b);
+		
+		MultiplayerProtocol.Frame lock = b.last(MultiplayerProtocol.LOCK);
+		assertEquals(cell, lock.cell);
+		assertEquals(a.player, lock.player);
+		assertEquals(a.last(MultiplayerProtocol.LOCK).cellVersion,
+				lock.cellVersion);
+	}
+	
+	@Test
+	public void onlyEmptyRoomCloses() {
+		Recorder a = new Recorder();
+		room.join(a);
+		
+		assertFalse(room.closeIfEmpty());
+		assertTrue(room.isOpen());
+		
+		assertTrue(room.leave(a));
+		assertTrue(room.closeIfEmpty());
+		assertFalse(room.join(new Recorder()));
+	}
+	
+	@Test
+	public void roomOpenedForPlayerWhoLeftIsClosed() throws Exception {
+		final CountDownLatch closed = new CountDownLatch(1);
+		final Recorder a = new Recorder() {
+			@Override
+			void close() {
+				closed.countDown();
+			}
+		};
+		final List<GameRoom> opened = new ArrayList<GameRoom>();
+		
+		GameRooms rooms = new GameRooms() {
+			@Override
+			protected void opened(GameRoom room) {
+				opened.add(room);
+				a.leave(this);
+			}
+		};
+		
+		rooms.join(a, 1, SudokuFactory.EASY);
+		assertTrue(closed.await(30, TimeUnit.SECONDS));
+		
+		assertEquals(1, opened.size());
+		assertFalse(opened.get(0).isOpen());
+		assertEquals(0, rooms.size());
+	}
+}
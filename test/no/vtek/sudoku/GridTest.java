@@ -0,0 +1,144 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Vegard Løkken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package no.vtek.sudoku;
+
+import java.nio.ByteBuffer;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the row, column and box masks follow the cells.
+ *
+ * @author Vegard Løkken
+ * @version 0.25
+ */
+public class GridTest {
+	
+	@Test
+	public void emptyGridHasAllCandidates() {
+		Grid grid = new Grid();
+		
+		for (int cell=0; cell<Grid.CELLS; cell++) {
+			assertEquals(Grid.ALL, grid.candidates(cell));
+		}
+		assertEquals(0, grid.getFilled());
+	}
+	
+	@Test
+	public void placeRemovesCandidateFromPeers() {
+		Grid grid = new Grid();
+		assertTrue(grid.place(4, 4, 5));
+		
+		int bit = 1 << 4;
+		assertEquals(0, grid.candidates(4, 0) & bit);
+		assertEquals(0, grid.candidates(0, 4) & bit);
+		assertEquals(0, grid.candidates(3, 3) & bit);
+		assertEquals(bit, grid.candidates(0, 0) & bit);
+		assertEquals(1, grid.getFilled());
+	}
+	
+	@Test
+	public void placeBreakingRulesLeavesGridAlone() {
+		Grid grid = new Grid();
+		grid.place(0, 0, 5);
+		grid.place(1, 1, 3);
+		
+		assertFalse(grid.place(0, 8, 5));
+		assertFalse(grid.place(8, 0, 5));
+		assertFalse(grid.place(2, 2, 5));
+		assertEquals(0, grid.get(0, 8));
+		assertEquals(2, grid.getFilled());
+		
+		// A failed replace keeps the old number and its masks
+		assertFalse(grid.place(1, 1, 5));
+		assertEquals(3, grid.get(1, 1));
+		assertEquals(0, grid.candidates(1, 7) & 1 << 2);
+	}
+	
+	@Test
+	public void replaceAndClearUpdateMasks() {
+		Grid grid = new Grid();
+		grid.place(0, 0, 5);
+		assertTrue(grid.place(0, 0, 6));
+		
+		assertEquals(1 << 4, grid.candidates(0, 8) & 1 << 4);
+		assertEquals(0, grid.candidates(0, 8) & 1 << 5);
+		assertEquals(1, grid.getFilled());
+		
+		grid.clear(0, 0);
+		assertEquals(Grid.ALL, grid.candidates(0, 8));
+		assertEquals(0, grid.getFilled());
+	}
+	
+	@Test
+	public void boardBreakingRulesIsNotValid() {
+		int[][] game = new int[Grid.SIZE][Grid.SIZE];
+		game[0][0] = 7;
+		game[0][5] = 7;
+		
+		Grid grid = new Grid(game);
+		assertFalse(grid.isValid());
+		assertEquals(1, grid.getFilled());
+		assertTrue(new Grid(new int[Grid.SIZE][Grid.SIZE]).isValid());
+	}
+	
+	@Test
+	public void copyIsIndependent() {
+		Grid grid = new Grid();
+		grid.place(0, 0, 1);
+		Grid copy = new Grid(grid);
+		copy.place(8, 8, 9);
+		
+		assertEquals(1, grid.getFilled());
+		assertEquals(Grid.ALL, grid.candidates(8, 8));
+		assertEquals(2, copy.getFilled());
+		assertEquals(1, copy.get(0, 0));
+	}
+	
+	@Test
+	public void packedRoundTrip() {
+		int[][] game = SudokuFactory.createGame(SudokuFactory.EASY);
+		Grid grid = new Grid(game);
+		ByteBuffer buffer = ByteBuffer.allocate(Grid.PACKED_SIZE + 3);
+		
+		grid.writePacked(buffer, 3);
+		Grid read = new Grid();
+		read.readPacked(buffer, 3);
+		
+		assertTrue(read.isValid());
+		assertEquals(grid.getFilled(), read.getFilled());
+		assertArrayEquals(game, read.toArray());
+		for (int cell=0; cell<Grid.CELLS; cell++) {
+			assertEquals(grid.candidates(cell), read.candidates(cell));
+		}
+	}
+	
+	@Test
+	public void firstNumberOfMask() {
+		assertEquals(1, Grid.firstNumber(Grid.ALL));
+		assertEquals(9, Grid.firstNumber(1 << 8));
+		assertEquals(4, Grid.firstNumber(1 << 3 | 1 << 6));
+	}
+}
@@ -0,0 +1,169 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Vegard Løkken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package no.vtek.sudoku;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Date;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks storing and replacing scores, and that damaged records and
+ * files are found out.
+ *
+ * @author Vegard Løkken
+ * @version 0.25
+ */
+public class HighscoreFileTest {
+	
+	private static final int HEADER_SIZE = 24;
+	private static final int RECORD_SIZE = 128;
+	
+	private File path;
+	private HighscoreFile file;
+	
+	@Before
+	public void openFile() throws IOException {
+		path = File.createTempFile("highscores", ".bin");
+		path.delete();
+		file = HighscoreFile.open(path);
+	}
+	
+	@After
+	public void deleteFile() throws IOException {
+		file.close();
+		path.delete();
+	}
+	
+	@Test
+	public void scoreReadsBackAfterReopening() throws IOException {
+		HighscoreItem item = new HighscoreItem("Bjørn", SudokuFactory.HARD,
+				123456L, new Date(1000));
+		assertTrue(file.write(item));
+		assertEquals(0, item.slot);
+		assertEquals(1, file.getGeneration());
+		
+		file.close();
+		file = HighscoreFile.open(path);
+		
+		ArrayList<HighscoreItem> items = file.readAll();
+		assertEquals(1, items.size());
+		assertEquals("Bjørn", items.get(0).getName());
+		assertEquals(SudokuFactory.HARD, items.get(0).getDifficultyLevel());
+		assertEquals(123456L, items.get(0).getTimeMillis());
+		assertEquals(new Date(1000), items.get(0).getDate());
+		assertEquals(1, file.getGeneration());
+	}
+	
+	@Test
+	public void replacingWritesAnotherSlotFirst() {
+		HighscoreItem old = new HighscoreItem("old", SudokuFactory.EASY,
+				2000L, new Date());
+		file.write(old);
+		
+		HighscoreItem better = new HighscoreItem("new", SudokuFactory.EASY,
+				1000L, new Date());
+		better.slot = old.slot;
+		assertTrue(file.write(better));
+		
+		assertTrue(better.slot != old.slot);
+		ArrayList<HighscoreItem> items = file.readAll();
+		assertEquals(1, items.size());
+		assertEquals("new", items.get(0).getName());
+		assertEquals(2, file.getGeneration());
+	}
+	
+	@Test
+	public void damagedRecordReadsAsEmpty() throws IOException {
+		file.write(new HighscoreItem("a", SudokuFactory.EASY, 1L, null));
+		file.write(new HighscoreItem("b", SudokuFactory.EASY, 2L, null));
+		file.close();
+		
+		// A crash in the middle of writing the first record
+		RandomAccessFile raf = new RandomAccessFile(path, "rw");
+		raf.seek(HEADER_SIZE + 10);
+		raf.write(0x55);
+		raf.close();
+		
+		file = HighscoreFile.open(path);
+		ArrayList<HighscoreItem> items = file.readAll();
+		assertEquals(1, items.size());
+		assertEquals("b", items.get(0).getName());
+		assertEquals(0, file.findFreeSlot());
+	}
+	
+	@Test
+	public void freedSlotIsReused() {
+		HighscoreItem item = new HighscoreItem("a", SudokuFactory.EASY, 1L,
+				null);
+		file.write(item);
+		file.free(item.slot);
+		
+		assertTrue(file.readAll().isEmpty());
+		assertEquals(0, file.findFreeSlot());
+		assertEquals(2, file.getGeneration());
+	}
+	
+	@Test
+	public void fullFileRefusesScores() {
+		for (int i=0; i<64; i++) {
+			assertTrue(file.write(new HighscoreItem("a", SudokuFactory.EASY,
+					(long) i + 1, null)));
+		}
+		
+		assertEquals(-1, file.findFreeSlot());
+		assertFalse(file.write(new HighscoreItem("b", SudokuFactory.EASY,
+				1L, null)));
+		assertEquals(64, file.readAll().size());
+	}
+	
+	@Test(expected = IOException.class)
+	public void damagedHeaderIsRefused() throws IOException {
+		file.close();
+		
+		RandomAccessFile raf = new RandomAccessFile(path, "rw");
+		raf.seek(8);
+		raf.writeInt(65);
+		raf.close();
+		
+		file = HighscoreFile.open(path);
+	}
+	
+	@Test(expected = IOException.class)
+	public void wrongSizeIsRefused() throws IOException {
+		file.close();
+		
+		RandomAccessFile raf = new RandomAccessFile(path, "rw");
+		raf.setLength(HEADER_SIZE + RECORD_SIZE);
+		raf.close();
+		
+		file = HighscoreFile.open(path);
+	}
+}
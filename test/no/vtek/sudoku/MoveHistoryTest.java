@@ -0,0 +1,166 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Vegard Løkken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package no.vtek.sudoku;
+
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that jumping anywhere in the history gives the board as it was
+ * after that many moves, and that moves keep the notes they cleared.
+ *
+ * @author Vegard Løkken
+ * @version 0.25
+ */
+public class MoveHistoryTest {
+	
+	private static final int MOVES = 5 * MoveHistory.CHECKPOINT + 7;
+	
+	private final int[][] boards = new int[MOVES + 1][Topology.CELLS];
+	private MoveHistory history;
+	
+	@Before
+	public void makeMoves() {
+		Random random = new Random(1);
+		int[][] game = new int[Topology.SIZE][Topology.SIZE];
+		game[4][4] = 5;
+		boards[0][40] = 5;
+		
+		history = new MoveHistory(game);
+		for (int i=1; i<=MOVES; i++) {
+			int cell = random.nextInt(Topology.CELLS);
+			int to = random.nextInt(Topology.SIZE + 1);
+			
+			System.arraycopy(boards[i - 1], 0, boards[i], 0, Topology.CELLS);
+			history.record(cell, boards[i][cell], to);
+			boards[i][cell] = to;
+		}
+	}
+	
+	@Test
+	public void jumpGivesBoardAtEveryPosition() {
+		Random random = new Random(2);
+		
+		for (int i=0; i<3 * MOVES; i++) {
+			int target = random.nextInt(MOVES + 1);
+			assertBoard(target, history.jump(target));
+			assertEquals(target, history.getPosition());
+			assertEquals(MOVES, history.size());
+		}
+	}
+	
+	@Test
+	public void undoAndRedoOneMoveAtATime() {
+		for (int i=MOVES; i>0; i--) {
+			assertTrue(history.canUndo());
+			assertBoard(i - 1, history.jump(i - 1));
+		}
+		assertFalse(history.canUndo());
+		
+		for (int i=0; i<MOVES; i++) {
+			assertTrue(history.canRedo());
+			assertBoard(i + 1, history.jump(i + 1));
+		}
+		assertFalse(history.canRedo());
+	}
+	
+	@Test
+	public void recordAfterJumpDropsRedo() {
+		history.jump(40);
+		history.record(0, boards[40][0], 9);
+		
+		assertEquals(41, history.size());
+		assertFalse(history.canRedo());
+		assertEquals(9, history.getCurrent().get(0));
+		assertBoard(40, history.jump(40));
+	}
+	
+	@Test
+	public void truncateDropsRedo() {
+		history.jump(MoveHistory.CHECKPOINT + 1);
+		history.truncate();
+		
+		assertEquals(MoveHistory.CHECKPOINT + 1, history.size());
+		assertFalse(history.canRedo());
+		assertBoard(0, history.jump(0));
+	}
+	
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void jumpPastEndFails() {
+		history.jump(MOVES + 1);
+	}
+	
+	@Test
+	public void snapshotsShareUntouchedBands() {
+		MoveHistory.Snapshot before = history.jump(10);
+		MoveHistory.Snapshot after = before.with(Topology.cell(8, 2), 7);
+		
+		assertEquals(boards[10][Topology.cell(8, 2)],
+				before.get(Topology.cell(8, 2)));
+		assertEquals(7, after.get(Topology.cell(8, 2)));
+		assertEquals(0, after.changes(before, 0));
+		assertEquals(boards[10][Topology.cell(8, 2)] != 7 ? 1 << 2 : 0,
+				after.changes(before, 8));
+	}
+	
+	@Test
+	public void clearedNotesAreKeptWithTheirMove() {
+		Notes notes = new Notes();
+		for (int cell=0; cell<Topology.CELLS; cell++) notes.set(cell, Grid.ALL);
+		notes.set(Topology.cell(4, 0), 0);
+		
+		int peers = notes.eliminate(40, 3);
+		history.record(40, boards[MOVES][40], 3, peers);
+		
+		assertEquals(40, history.getCell(MOVES));
+		assertEquals(3, history.getNumber(MOVES));
+		assertEquals(peers, history.getClearedNotes(MOVES));
+		assertEquals(0, history.getClearedNotes(MOVES - 1));
+		
+		// Every peer but the one without notes had the 3
+		assertEquals(Topology.PEERS - 1, Integer.bitCount(peers));
+		
+		notes.restore(40, 3, peers);
+		for (int cell=0; cell<Topology.CELLS; cell++) {
+			assertEquals(cell == Topology.cell(4, 0) ? 0 : Grid.ALL,
+					notes.get(cell));
+		}
+		
+		notes.remove(40, 3, peers);
+		assertEquals(Grid.ALL & ~(1 << 2), notes.get(Topology.cell(4, 8)));
+		assertEquals(Grid.ALL & ~(1 << 2), notes.get(Topology.cell(3, 3)));
+		assertEquals(Grid.ALL, notes.get(40));
+		assertEquals(Grid.ALL, notes.get(Topology.cell(0, 0)));
+	}
+	
+	private void assertBoard(int position, MoveHistory.Snapshot board) {
+		for (int cell=0; cell<Topology.CELLS; cell++) {
+			assertEquals("move " + position + " cell " + cell,
+					boards[position][cell], board.get(cell));
+		}
+	}
+}
@@ -0,0 +1,192 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Vegard Løkken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package no.vtek.sudoku;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that every frame reads back as it was written, and that broken
+ * frames are turned away.
+ *
+ * @author Vegard Løkken
+ * @version 0.25
+ */
+public class MultiplayerProtocolTest {
+	
+	private final ByteBuffer buffer =
+			ByteBuffer.allocate(4 * MultiplayerProtocol.MAX_SIZE);
+	private final MultiplayerProtocol.Frame frame =
+			new MultiplayerProtocol.Frame();
+	
+	@Test
+	public void boardRoundTrip() throws ProtocolException {
+		Random random = new Random(1);
+		int[] cells = new int[Topology.CELLS];
+		boolean[] given = new boolean[Topology.CELLS];
+		for (int cell=0; cell<Topology.CELLS; cell++) {
+			cells[cell] = random.nextInt(Topology.SIZE + 1);
+			given[cell] = random.nextBoolean();
+		}
+		// The last cell shares its byte with nothing
+		cells[Topology.CELLS - 1] = Topology.SIZE;
+		given[Topology.CELLS - 1] = true;
+		
+		MultiplayerProtocol.writeBoard(buffer, 15, 123456, cells, given);
+		read();
+		
+		assertEquals(MultiplayerProtocol.BOARD, frame.type);
+		assertEquals(MultiplayerProtocol.VERSION, frame.version);
+		assertEquals(15, frame.player);
+		assertEquals(123456, frame.sequence);
+		assertArrayEquals(cells, frame.cells);
+		for (int cell=0; cell<Topology.CELLS; cell++) {
+			assertEquals("given " + cell, given[cell], frame.given[cell]);
+		}
+	}
+	
+	@Test
+	public void cellRoundTrip() throws ProtocolException {
+		MultiplayerProtocol.writeCell(buffer, 80, 9, 7, Integer.MAX_VALUE);
+		read();
+		
+		assertEquals(MultiplayerProtocol.CELL, frame.type);
+		assertEquals(80, frame.cell);
+		assertEquals(9, frame.number);
+		assertEquals(7, frame.player);
+		assertEquals(Integer.MAX_VALUE, frame.sequence);
+	}
+	
+	@Test
+	public void lockAndUnlockRoundTrip() throws ProtocolException {
+		MultiplayerProtocol.writeLock(buffer, 40, 3, 0xFFFF);
+		MultiplayerProtocol.writeUnlock(buffer, 41, 4, 1);
+		buffer.flip();
+		
+		assertTrue(MultiplayerProtocol.read(buffer, frame));
+		assertEquals(MultiplayerProtocol.LOCK, frame.type);
+		assertEquals(40, frame.cell);
+		assertEquals(3, frame.player);
+		assertEquals(0xFFFF, frame.cellVersion);
+		
+		assertTrue(MultiplayerProtocol.read(buffer, frame));
+		assertEquals(MultiplayerProtocol.UNLOCK, frame.type);
+		assertEquals(41, frame.cell);
+		assertEquals(4, frame.player);
+		assertEquals(1, frame.cellVersion);
+		assertFalse(buffer.hasRemaining());
+	}
+	
+	@Test
+	public void scoreRoundTrip() throws ProtocolException {
+		MultiplayerProtocol.writeScore(buffer, 2, -5);
+		read();
+		
+		assertEquals(MultiplayerProtocol.SCORE, frame.type);
+		assertEquals(2, frame.player);
+		assertEquals(-5, frame.score);
+	}
+	
+	@Test
+	public void joinAndSetRoundTrip() throws ProtocolException {
+		MultiplayerProtocol.writeJoin(buffer, 42, SudokuFactory.HARD);
+		MultiplayerProtocol.writeSet(buffer, 5, 0);
+		buffer.flip();
+		
+		assertTrue(MultiplayerProtocol.read(buffer, frame));
+		assertEquals(MultiplayerProtocol.JOIN, frame.type);
+		assertEquals(42, frame.room);
+		assertEquals(SudokuFactory.HARD, frame.difficulty);
+		
+		assertTrue(MultiplayerProtocol.read(buffer, frame));
+		assertEquals(MultiplayerProtocol.SET, frame.type);
+		assertEquals(5, frame.cell);
+		assertEquals(0, frame.number);
+	}
+	
+	@Test
+	public void partialFrameIsLeftForLater() throws ProtocolException {
+		MultiplayerProtocol.writeCell(buffer, 1, 2, 3, 4);
+		int size = buffer.position();
+		
+		for (int part=0; part<size; part++) {
+			ByteBuffer partial = ByteBuffer.wrap(buffer.array(), 0, part);
+			assertFalse(MultiplayerProtocol.read(partial, frame));
+			assertEquals(0, partial.position());
+		}
+		
+		read();
+		assertEquals(4, frame.sequence);
+	}
+	
+	@Test(expected = ProtocolException.class)
+	public void badVersionIsRefused() throws ProtocolException {
+		MultiplayerProtocol.writeJoin(buffer, 1, SudokuFactory.EASY);
+		buffer.put(MultiplayerProtocol.LENGTH + 1,
+				(byte) (MultiplayerProtocol.VERSION + 1));
+		read();
+	}
+	
+	@Test(expected = ProtocolException.class)
+	public void zeroLengthIsRefused() throws ProtocolException {
+		buffer.putShort((short) 0);
+		read();
+	}
+	
+	@Test(expected = ProtocolException.class)
+	public void tooLongIsRefused() throws ProtocolException {
+		buffer.putShort((short) (MultiplayerProtocol.MAX_FRAME + 1));
+		read();
+	}
+	
+	@Test(expected = ProtocolException.class)
+	public void wrongLengthForTypeIsRefused() throws ProtocolException {
+		MultiplayerProtocol.writeScore(buffer, 1, 1);
+		buffer.putShort(0, (short) 7);
+		buffer.put((byte) 0);
+		read();
+	}
+	
+	@Test(expected = ProtocolException.class)
+	public void badCellIsRefused() throws ProtocolException {
+		MultiplayerProtocol.writeSet(buffer, Topology.CELLS, 1);
+		read();
+	}
+	
+	@Test(expected = ProtocolException.class)
+	public void badNumberIsRefused() throws ProtocolException {
+		MultiplayerProtocol.writeSet(buffer, 0, Topology.SIZE + 1);
+		read();
+	}
+	
+	private void read() throws ProtocolException {
+		buffer.flip();
+		assertTrue(MultiplayerProtocol.read(buffer, frame));
+		assertFalse(buffer.hasRemaining());
+	}
+}
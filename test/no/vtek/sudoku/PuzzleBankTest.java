@@ -0,0 +1,141 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Vegard Løkken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package no.vtek.sudoku;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the runs of a bank find every game of a level, and that an
+ * append that didn't finish is left out.
+ *
+ * @author Vegard Løkken
+ * @version 0.25
+ */
+public class PuzzleBankTest {
+	
+	/* Taken as the number of tiles to remove, which is quick to make */
+	private static final int FEW = 30;
+	private static final int MORE = 35;
+	
+	private final Random random = new Random(1);
+	private File path;
+	
+	@Before
+	public void createPath() throws IOException {
+		path = File.createTempFile("puzzles", ".bank");
+		path.delete();
+	}
+	
+	@After
+	public void deletePath() {
+		path.delete();
+	}
+	
+	@Test
+	public void missingFileIsNoBank() throws IOException {
+		assertNull(PuzzleBank.open(path));
+	}
+	
+	@Test
+	public void runsOfALevelAreJoined() throws IOException {
+		PuzzleBank.append(path, FEW, 3, random);
+		PuzzleBank.append(path, MORE, 2, random);
+		PuzzleBank.append(path, FEW, 4, random);
+		PuzzleBank.append(path, FEW, 1, random);
+		
+		PuzzleBank bank = PuzzleBank.open(path);
+		assertEquals(8, bank.size(FEW));
+		assertEquals(2, bank.size(MORE));
+		assertEquals(0, bank.size(SudokuFactory.HARD));
+		assertNull(bank.randomGame(SudokuFactory.HARD, random));
+		
+		assertGames(bank, FEW);
+		assertGames(bank, MORE);
+	}
+	
+	@Test
+	public void unfinishedAppendIsLeftOut() throws IOException {
+		PuzzleBank.append(path, FEW, 2, random);
+		
+		// Records written before the header was updated
+		RandomAccessFile raf = new RandomAccessFile(path, "rw");
+		raf.setLength(raf.length() + 100);
+		raf.close();
+		
+		assertEquals(2, PuzzleBank.open(path).size(FEW));
+		
+		PuzzleBank.append(path, MORE, 1, random);
+		PuzzleBank bank = PuzzleBank.open(path);
+		assertEquals(2, bank.size(FEW));
+		assertEquals(1, bank.size(MORE));
+		assertGames(bank, MORE);
+	}
+	
+	@Test(expected = IOException.class)
+	public void otherFileIsNoBank() throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(path, "rw");
+		raf.write(new byte[4096]);
+		raf.close();
+		
+		PuzzleBank.open(path);
+	}
+	
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void gamePastEndFails() throws IOException {
+		PuzzleBank.append(path, FEW, 1, random);
+		
+		PuzzleBank.open(path).getPuzzle(FEW, 1, new Grid());
+	}
+	
+	/**
+	 * Checks that each game of a level is a puzzle of that level with its
+	 * solution.
+	 */
+	private static void assertGames(PuzzleBank bank, int difficulty) {
+		Grid puzzle = new Grid();
+		Grid solution = new Grid();
+		
+		for (int n=0; n<bank.size(difficulty); n++) {
+			bank.getPuzzle(difficulty, n, puzzle);
+			bank.getSolution(difficulty, n, solution);
+			
+			assertTrue(puzzle.getFilled() >= Grid.CELLS - difficulty);
+			assertTrue(puzzle.getFilled() < Grid.CELLS);
+			assertEquals(Grid.CELLS, solution.getFilled());
+			for (int cell=0; cell<Grid.CELLS; cell++) {
+				if (puzzle.get(cell) != 0) {
+					assertEquals(solution.get(cell), puzzle.get(cell));
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,138 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Vegard Løkken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package no.vtek.sudoku;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks the ranks and pages of the index against a sorted list.
+ *
+ * @author Vegard Løkken
+ * @version 0.25
+ */
+public class RankedIndexTest {
+	
+	private static HighscoreItem item(String name, long time) {
+		return new HighscoreItem(name, SudokuFactory.EASY, time, null);
+	}
+	
+	/**
+	 * Inserts into a list kept in the order the index should have.
+	 */
+	private static int insert(List<HighscoreItem> list, HighscoreItem item) {
+		int index = list.size();
+		while (index > 0
+				&& list.get(index - 1).getTimeMillis() > item.getTimeMillis()) {
+			index--;
+		}
+		list.add(index, item);
+		return index + 1;
+	}
+	
+	@Test
+	public void emptyIndexRanksFirst() {
+		RankedIndex index = new RankedIndex();
+		
+		assertEquals(0, index.size());
+		assertEquals(1, index.rank(1000));
+		assertTrue(index.get(0, 10).isEmpty());
+	}
+	
+	@Test
+	public void addAgreesWithSortedList() {
+		Random random = new Random(1);
+		RankedIndex index = new RankedIndex();
+		List<HighscoreItem> expected = new ArrayList<HighscoreItem>();
+		
+		for (int i=0; i<2000; i++) {
+			// Few distinct times, so there are many ties
+			HighscoreItem item = item("p" + i, 1 + random.nextInt(300));
+			int rank = index.add(item);
+			
+			assertEquals(insert(expected, item), rank);
+			assertEquals(expected.size(), index.size());
+		}
+		
+		assertEquals(expected, index.get(0, expected.size()));
+	}
+	
+	@Test
+	public void rankCountsEqualTimesAsBetter() {
+		RankedIndex index = new RankedIndex();
+		index.add(item("a", 10));
+		index.add(item("b", 20));
+		index.add(item("c", 20));
+		index.add(item("d", 30));
+		
+		assertEquals(1, index.rank(5));
+		assertEquals(2, index.rank(10));
+		assertEquals(4, index.rank(20));
+		assertEquals(4, index.rank(25));
+		assertEquals(5, index.rank(30));
+		assertEquals(5, index.rank(31));
+	}
+	
+	@Test
+	public void equalTimesKeepInsertionOrder() {
+		RankedIndex index = new RankedIndex();
+		HighscoreItem first = item("first", 50);
+		HighscoreItem second = item("second", 50);
+		
+		assertEquals(1, index.add(first));
+		assertEquals(2, index.add(second));
+		assertEquals(1, index.add(item("best", 40)));
+		
+		List<HighscoreItem> items = index.get(0, 3);
+		assertSame(first, items.get(1));
+		assertSame(second, items.get(2));
+	}
+	
+	@Test
+	public void getReturnsEveryPage() {
+		Random random = new Random(2);
+		RankedIndex index = new RankedIndex();
+		List<HighscoreItem> expected = new ArrayList<HighscoreItem>();
+		
+		for (int i=0; i<500; i++) {
+			HighscoreItem item = item("p" + i, random.nextInt(100000));
+			index.add(item);
+			insert(expected, item);
+		}
+		
+		for (int offset=0; offset<=expected.size(); offset+=7) {
+			int end = Math.min(offset + 10, expected.size());
+			assertEquals("offset " + offset, expected.subList(offset, end),
+					index.get(offset, 10));
+		}
+		
+		assertTrue(index.get(expected.size(), 10).isEmpty());
+		assertTrue(index.get(0, 0).isEmpty());
+		assertEquals(expected.subList(0, 3), index.get(-5, 3));
+	}
+}
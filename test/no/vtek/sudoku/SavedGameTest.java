@@ -0,0 +1,148 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Vegard Løkken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package no.vtek.sudoku;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that a saved game reads back as written, and that saves which
+ * can't be played are turned down.
+ *
+ * @author Vegard Løkken
+ * @version 0.25
+ */
+public class SavedGameTest {
+	
+	private static final int NOTES = 98;
+	private static final int CHECKSUM = 260;
+	
+	private int[][] original;
+	private int[][] game;
+	private int empty;
+	private File file;
+	private File temp;
+	
+	@Before
+	public void createGame() throws IOException {
+		original = SudokuFactory.createGame(SudokuFactory.MEDIUM);
+		int[][] solution = SudokuFactory.finishGame(original);
+		
+		game = new int[Topology.SIZE][Topology.SIZE];
+		for (int row=0; row<Topology.SIZE; row++) {
+			game[row] = original[row].clone();
+		}
+		
+		empty = 0;
+		while (original[Topology.row(empty)][Topology.col(empty)] != 0) {
+			empty++;
+		}
+		game[Topology.row(empty)][Topology.col(empty)] =
+				solution[Topology.row(empty)][Topology.col(empty)];
+		
+		file = File.createTempFile("sudoku", ".save");
+		temp = new File(file.getPath() + ".tmp");
+	}
+	
+	@After
+	public void deleteFiles() {
+		file.delete();
+		temp.delete();
+	}
+	
+	@Test
+	public void readsBackAsWritten() throws IOException {
+		Notes notes = new Notes();
+		notes.set(empty + 1, Grid.ALL);
+		saved(game, notes).write(file);
+		
+		SavedGame read = SavedGame.read(file);
+		assertEquals(SudokuFactory.MEDIUM, read.getDifficulty());
+		assertEquals(12345, read.getTime());
+		assertTrue(read.getHints());
+		assertFalse(read.getRedo());
+		assertArrayEquals(original, read.getOriginal());
+		assertArrayEquals(game, read.getGame());
+		assertEquals(Grid.ALL, read.getNotes().get(empty + 1));
+		assertFalse(temp.exists());
+	}
+	
+	@Test
+	public void saveThatLostAGivenIsIgnored() throws IOException {
+		int given = 0;
+		while (original[Topology.row(given)][Topology.col(given)] == 0) {
+			given++;
+		}
+		game[Topology.row(given)][Topology.col(given)] = 0;
+		saved(game, new Notes()).write(file);
+		
+		assertNull(SavedGame.read(file));
+	}
+	
+	@Test
+	public void notesPastNineAreIgnored() throws IOException {
+		saved(game, new Notes()).write(file);
+		
+		byte[] data = new byte[SavedGame.SIZE];
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.readFully(data);
+		
+		ByteBuffer buffer = ByteBuffer.wrap(data);
+		buffer.putShort(NOTES + 2 * empty, (short) (1 << Topology.SIZE));
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, CHECKSUM);
+		buffer.putInt(CHECKSUM, (int) crc.getValue());
+		
+		raf.seek(0);
+		raf.write(data);
+		raf.close();
+		
+		assertNull(SavedGame.read(file));
+	}
+	
+	@Test
+	public void temporaryFileIsReadWhenSaveIsMissing() throws IOException {
+		saved(game, new Notes()).write(file);
+		assertTrue(file.renameTo(temp));
+		
+		assertArrayEquals(game, SavedGame.read(file).getGame());
+		
+		assertTrue(SavedGame.delete(file));
+		assertFalse(temp.exists());
+		assertNull(SavedGame.read(file));
+	}
+	
+	private SavedGame saved(int[][] board, Notes notes) {
+		return new SavedGame(SudokuFactory.MEDIUM, original, board, notes,
+				12345, true, true, true, true, false);
+	}
+}
@@ -0,0 +1,96 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Vegard Løkken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package no.vtek.sudoku;
+
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the difficulty levels are told apart by the techniques
+ * the games need.
+ *
+ * @author Vegard Løkken
+ * @version 0.25
+ */
+public class SudokuFactoryTest {
+	
+	private static final int GAMES = 10;
+	private static final int[] LEVELS = {SudokuFactory.EASY,
+			SudokuFactory.MEDIUM, SudokuFactory.HARD};
+	
+	@Test
+	public void levelsDoNotOverlap() {
+		for (Technique technique : Technique.values()) {
+			int fits = 0;
+			for (int level : LEVELS) {
+				if (SudokuFactory.fitsDifficulty(level, technique)) fits++;
+			}
+			
+			int expected = technique == Technique.GUESS ? 0 : 1;
+			assertEquals(technique.toString(), expected, fits);
+		}
+	}
+	
+	@Test
+	public void easyGamesNeedSinglesOnly() {
+		for (Technique hardest : rate(SudokuFactory.EASY)) {
+			assertTrue("" + hardest, hardest == null
+					|| hardest.compareTo(Technique.HIDDEN_SINGLE) <= 0);
+		}
+	}
+	
+	@Test
+	public void mediumGamesNeedLockedCandidates() {
+		for (Technique hardest : rate(SudokuFactory.MEDIUM)) {
+			assertEquals(Technique.LOCKED_CANDIDATES, hardest);
+		}
+	}
+	
+	@Test
+	public void hardGamesNeedMoreButNeverGuessing() {
+		for (Technique hardest : rate(SudokuFactory.HARD)) {
+			assertNotNull(hardest);
+			assertTrue("" + hardest,
+					hardest.compareTo(Technique.NAKED_PAIR) >= 0
+					&& hardest.compareTo(Technique.SWORDFISH) <= 0);
+		}
+	}
+	
+	/**
+	 * @return The hardest technique needed by each of a few new games
+	 */
+	private static Technique[] rate(int difficulty) {
+		Random random = new Random(difficulty);
+		DifficultyRater rater = new DifficultyRater();
+		Technique[] hardest = new Technique[GAMES];
+		
+		for (int i=0; i<GAMES; i++) {
+			rater.rate(SudokuFactory.createPuzzle(difficulty, random));
+			hardest[i] = rater.getHardest();
+		}
+		return hardest;
+	}
+}